@@ -3,12 +3,19 @@ package controllers;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 import entities.Card;
 import entities.CardOperation;
 import entities.User;
 import enums.OperationType;
+import repositories.OperationQuery;
+import repositories.Page;
 import services.CardOperationService;
 import services.CardService;
 import utils.Console;
@@ -17,6 +24,7 @@ public class CardOperationController {
     private final CardOperationService cardOperationService;
     private final CardService cardService;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final int PAGE_SIZE = 10;
 
     public CardOperationController(CardOperationService cardOperationService, CardService cardService) {
         this.cardOperationService = cardOperationService;
@@ -169,44 +177,48 @@ public class CardOperationController {
             }
 
             Card selectedCard = userCards.get(cardIndex);
-            List<CardOperation> operations = cardOperationService
-                    .getCardOperations(String.valueOf(selectedCard.getId()));
+            OperationQuery cardQuery = OperationQuery.forCard(selectedCard.getId());
+            Page<CardOperation> page = cardOperationService.getOperationsPage(cardQuery, PAGE_SIZE);
 
-            if (operations.isEmpty()) {
+            if (page.items().isEmpty()) {
                 Console.info("No operations found for this card.");
                 return;
             }
 
-            // Display operations
+            // Display operations, one page at a time
             Console.line();
             Console.info("Operations for card " + selectedCard.getCardNumber() + ":");
-            for (CardOperation op : operations) {
+            while (true) {
+                page.items().forEach(this::displayOperation);
                 Console.line();
-                Console.info("Date: " + op.date().format(DATE_FORMATTER));
-                Console.info("Type: " + op.type());
-                Console.info("Amount: " + op.amount());
-                Console.info("Location: " + op.location());
-            }
-            Console.line();
 
-            // Display filtering options
-            Console.info("Filter options:");
-            Console.info("1) Filter by type");
-            Console.info("2) Filter by date range");
-            Console.info("0) Back");
+                // Display paging and filtering options
+                Console.info("Filter options:");
+                if (page.hasNext())
+                    Console.info("n) Next page");
+                Console.info("1) Filter by type");
+                Console.info("2) Filter by date range");
+                Console.info("0) Back");
+
+                String filterChoice = Console.ask("Enter your choice: ");
+                if (filterChoice.equalsIgnoreCase("n") && page.hasNext()) {
+                    page = cardOperationService.getOperationsPage(cardQuery.after(page.next()), PAGE_SIZE);
+                    continue;
+                }
 
-            String filterChoice = Console.ask("Enter your choice: ");
-            switch (filterChoice) {
-                case "1":
-                    filterByType(operations);
-                    break;
-                case "2":
-                    filterByDateRange(operations);
-                    break;
-                case "0":
-                    return;
-                default:
-                    Console.error("Invalid option");
+                switch (filterChoice) {
+                    case "1":
+                        filterByType(cardQuery);
+                        break;
+                    case "2":
+                        filterByDateRange(cardQuery);
+                        break;
+                    case "0":
+                        return;
+                    default:
+                        Console.error("Invalid option");
+                }
+                return;
             }
 
         } catch (NumberFormatException e) {
@@ -214,12 +226,103 @@ public class CardOperationController {
         }
     }
 
+    /**
+     * Show the operations of all the user's cards, newest first, optionally
+     * filtered by type and date range
+     * 
+     * @param currentUser The current logged-in user
+     */
+    public void statement(User currentUser) {
+        Map<Integer, UUID> cardNumbers = new HashMap<>();
+        for (Card card : cardService.getUserCards(currentUser.id())) {
+            cardNumbers.put(card.getId(), card.getCardNumber());
+        }
+
+        if (cardNumbers.isEmpty()) {
+            Console.info("You don't have any cards yet.");
+            return;
+        }
+
+        // Optional filters
+        Console.line();
+        Console.info("Statement filters (leave empty to skip)");
+        Console.info("Operation type: 1) Purchase  2) Withdrawal  3) Online Payment");
+        OperationType type;
+        switch (Console.ask("Type: ").trim()) {
+            case "":
+                type = null;
+                break;
+            case "1":
+                type = OperationType.ACHAT;
+                break;
+            case "2":
+                type = OperationType.RETRAIT;
+                break;
+            case "3":
+                type = OperationType.PAIEMENTENLIGNE;
+                break;
+            default:
+                Console.error("Invalid operation type");
+                return;
+        }
+
+        LocalDateTime from;
+        LocalDateTime to;
+        try {
+            from = parseOptionalDate(Console.ask("From (yyyy-MM-dd HH:mm): "));
+            to = parseOptionalDate(Console.ask("To (yyyy-MM-dd HH:mm): "));
+        } catch (DateTimeParseException e) {
+            Console.error("Invalid date format. Use yyyy-MM-dd HH:mm");
+            return;
+        }
+
+        if (from != null && to != null && from.isAfter(to)) {
+            Console.error("'From' date must be before 'To' date");
+            return;
+        }
+
+        OperationQuery statementQuery = OperationQuery.forUser(currentUser.id()).between(from, to);
+        if (type != null)
+            statementQuery = statementQuery.withTypes(type);
+
+        Page<CardOperation> page = cardOperationService.getOperationsPage(statementQuery, PAGE_SIZE);
+        if (page.items().isEmpty()) {
+            Console.info("No operations match the filter criteria.");
+            return;
+        }
+
+        // Display operations, one page at a time
+        Console.line();
+        Console.info("Statement for " + currentUser.name() + ":");
+        while (true) {
+            for (CardOperation op : page.items()) {
+                displayOperation(op);
+                Console.info("Card: " + cardNumbers.get(op.cardId()));
+            }
+            Console.line();
+
+            if (!page.hasNext())
+                return;
+
+            Console.info("n) Next page");
+            Console.info("0) Back");
+            if (!Console.ask("Enter your choice: ").equalsIgnoreCase("n"))
+                return;
+
+            page = cardOperationService.getOperationsPage(statementQuery.after(page.next()), PAGE_SIZE);
+        }
+    }
+
+    private LocalDateTime parseOptionalDate(String value) {
+        return value.isBlank() ? null : LocalDateTime.parse(value.trim(), DATE_FORMATTER);
+    }
+
     /**
      * Filter operations by type
      * 
-     * @param operations List of operations to filter
+     * @param cardQuery Query selecting the card's operations
      */
-    private void filterByType(List<CardOperation> operations) {
+    private void filterByType(OperationQuery cardQuery) {
         Console.line();
         Console.info("Select operation type:");
         Console.info("1) Purchase");
@@ -245,16 +348,18 @@ public class CardOperationController {
                 return;
         }
 
-        List<CardOperation> filteredOperations = cardOperationService.filterOperationsByType(operations, operationType);
-        displayOperations(filteredOperations, "Filtered by type: " + operationType.name());
+        try (Stream<CardOperation> operations = cardOperationService
+                .streamOperations(cardQuery.withTypes(operationType))) {
+            displayOperations(operations, "Filtered by type: " + operationType.name());
+        }
     }
 
     /**
      * Filter operations by date range
      * 
-     * @param operations List of operations to filter
+     * @param cardQuery Query selecting the card's operations
      */
-    private void filterByDateRange(List<CardOperation> operations) {
+    private void filterByDateRange(OperationQuery cardQuery) {
         Console.line();
         Console.info("Enter date range (format: yyyy-MM-dd HH:mm)");
         String fromStr = Console.ask("From: ");
@@ -269,36 +374,42 @@ public class CardOperationController {
                 return;
             }
 
-            List<CardOperation> filteredOperations = cardOperationService.filterOperationsByDateRange(operations, from,
-                    to);
-            displayOperations(filteredOperations, "Filtered by date range");
+            try (Stream<CardOperation> operations = cardOperationService
+                    .streamOperations(cardQuery.between(from, to))) {
+                displayOperations(operations, "Filtered by date range");
+            }
         } catch (DateTimeParseException e) {
             Console.error("Invalid date format. Use yyyy-MM-dd HH:mm");
         }
     }
 
     /**
-     * Display a list of operations
+     * Display operations as they are read, without holding them in memory
      * 
-     * @param operations List of operations to display
+     * @param operations Stream of operations to display
      * @param header     Header text to show
      */
-    private void displayOperations(List<CardOperation> operations, String header) {
+    private void displayOperations(Stream<CardOperation> operations, String header) {
         Console.line();
         Console.info(header);
 
-        if (operations.isEmpty()) {
+        Iterator<CardOperation> it = operations.iterator();
+        if (!it.hasNext()) {
             Console.info("No operations match the filter criteria.");
             return;
         }
 
-        for (CardOperation op : operations) {
-            Console.line();
-            Console.info("Date: " + op.date().format(DATE_FORMATTER));
-            Console.info("Type: " + op.type());
-            Console.info("Amount: " + op.amount());
-            Console.info("Location: " + op.location());
+        while (it.hasNext()) {
+            displayOperation(it.next());
         }
         Console.line();
     }
+
+    private void displayOperation(CardOperation op) {
+        Console.line();
+        Console.info("Date: " + op.date().format(DATE_FORMATTER));
+        Console.info("Type: " + op.type());
+        Console.info("Amount: " + op.amount());
+        Console.info("Location: " + op.location());
+    }
 }
\ No newline at end of file
@@ -61,11 +61,25 @@ CREATE TABLE card_operations (
     amount DECIMAL(15,2) NOT NULL,
     type ENUM('ACHAT', 'RETRAIT', 'PAIEMENTENLIGNE') NOT NULL,
     location VARCHAR(255) NOT NULL,
+    -- Location with case, accents and punctuation folded, what location filters compare
+    normalized_location VARCHAR(255) NULL,
     card_id INT NOT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (card_id) REFERENCES cards(id) ON DELETE CASCADE
 );
 
+-- Running spend per card and period bucket, maintained with every operation insert
+CREATE TABLE card_spend_counters (
+    card_id INT NOT NULL,
+    period ENUM('DAY', 'MONTH') NOT NULL,
+    period_start DATE NOT NULL,
+    total_amount DECIMAL(15,2) NOT NULL DEFAULT 0.00,
+    operation_count INT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (card_id, period, period_start),
+    FOREIGN KEY (card_id) REFERENCES cards(id) ON DELETE CASCADE
+);
+
 -- Fraud alerts table
 CREATE TABLE fraud_alerts (
     id INT AUTO_INCREMENT PRIMARY KEY,
@@ -77,16 +91,38 @@ CREATE TABLE fraud_alerts (
     FOREIGN KEY (card_id) REFERENCES cards(id) ON DELETE CASCADE
 );
 
+-- Distinct operation locations, one row per normalized name
+CREATE TABLE locations (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    normalized_name VARCHAR(255) NOT NULL UNIQUE
+);
+
+-- Locations used by unusually many different cards in a short time
+CREATE TABLE location_alerts (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    location_id INT NOT NULL,
+    description TEXT NOT NULL,
+    distinct_cards INT NOT NULL,
+    level ENUM('INFO', 'AVERTISSEMENT', 'CRITIQUE') NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (location_id) REFERENCES locations(id)
+);
+
 -- Indexes for better performance
 CREATE INDEX idx_cards_user_id ON cards(user_id);
 CREATE INDEX idx_cards_status ON cards(status);
 CREATE INDEX idx_cards_type ON cards(card_type);
 CREATE INDEX idx_operations_card_id ON card_operations(card_id);
+CREATE INDEX idx_operations_card_date ON card_operations(card_id, date);
 CREATE INDEX idx_operations_date ON card_operations(date);
 CREATE INDEX idx_operations_type ON card_operations(type);
+CREATE INDEX idx_operations_location ON card_operations(normalized_location);
 CREATE INDEX idx_alerts_card_id ON fraud_alerts(card_id);
 CREATE INDEX idx_alerts_level ON fraud_alerts(level);
 CREATE INDEX idx_alerts_created_at ON fraud_alerts(created_at);
+CREATE INDEX idx_alerts_card_created ON fraud_alerts(card_id, created_at);
+CREATE INDEX idx_location_alerts_location ON location_alerts(location_id);
 
 -- Insert sample data for testing
 INSERT INTO users (name, email, phone_number) VALUES
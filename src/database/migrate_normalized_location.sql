@@ -0,0 +1,6 @@
+-- Upgrade of a database created before card_operations.normalized_location.
+-- Run it once, then start the application once with --migrate-locations to fill the new column in
+-- for the existing operations; their location as typed is not changed.
+ALTER TABLE card_operations ADD COLUMN normalized_location VARCHAR(255) NULL AFTER location;
+DROP INDEX idx_operations_location ON card_operations;
+CREATE INDEX idx_operations_location ON card_operations(normalized_location);
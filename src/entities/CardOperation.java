@@ -4,7 +4,9 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 import enums.OperationType;
+import utils.GenerateMapper;
 
+@GenerateMapper
 public record CardOperation(
         UUID id,
         LocalDateTime date,
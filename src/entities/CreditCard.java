@@ -4,6 +4,7 @@ import java.util.Map;
 
 import enums.CardStatus;
 import enums.CardType;
+import utils.GenerateMapper;
 
 final public class CreditCard extends Card {
     public static final String TABLE_NAME = "credit_cards";
@@ -13,6 +14,7 @@ final public class CreditCard extends Card {
     public static Map<String, Object> OFFER2 = Map.of("monthly_limit", 50000.0, "interest_rate", 3.5);
     public static Map<String, Object> OFFER3 = Map.of("monthly_limit", 100000.0, "interest_rate", 5.0);
 
+    @GenerateMapper(insertable = false)
     public CreditCard(int id, String expirationDate, String status, int userId, double monthlyLimit,
             double interestRate) {
         super(id, expirationDate, status, CardType.CREDIT.name(), userId);
@@ -4,6 +4,7 @@ import java.util.Map;
 
 import enums.CardStatus;
 import enums.CardType;
+import utils.GenerateMapper;
 
 final public class DebitCard extends Card {
     public static final String TABLE_NAME = "debit_cards";
@@ -12,6 +13,7 @@ final public class DebitCard extends Card {
     public static Map<String, Object> OFFER2 = Map.of("daily_limit", 5000.0);
     public static Map<String, Object> OFFER3 = Map.of("daily_limit", 12000.0);
 
+    @GenerateMapper(insertable = false)
     public DebitCard(int id, String expirationDate, String status, int userId, double dailyLimit) {
         super(id, expirationDate, status, CardType.DEBIT.name(), userId);
         this.dailyLimit = dailyLimit;
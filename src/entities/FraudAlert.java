@@ -1,7 +1,9 @@
 package entities;
 
 import enums.AlertLevel;
+import utils.GenerateMapper;
 
+@GenerateMapper(generatedKeys = "id")
 public record FraudAlert(
         int id,
         String description,
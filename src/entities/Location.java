@@ -0,0 +1,17 @@
+package entities;
+
+import utils.GenerateMapper;
+
+/**
+ * A distinct operation location
+ *
+ * @param id             dictionary id
+ * @param name           spelling the location was first seen with
+ * @param normalizedName key every spelling of the location shares
+ */
+@GenerateMapper(generatedKeys = "id")
+public record Location(
+        int id,
+        String name,
+        String normalizedName) {
+}
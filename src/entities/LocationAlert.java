@@ -0,0 +1,20 @@
+package entities;
+
+import enums.AlertLevel;
+import utils.GenerateMapper;
+
+/**
+ * A location used by unusually many different cards in a short time
+ */
+@GenerateMapper(generatedKeys = "id")
+public record LocationAlert(
+        int id,
+        int locationId,
+        String description,
+        int distinctCards,
+        String level) {
+
+    public AlertLevel getLevelEnum() {
+        return AlertLevel.valueOf(level);
+    }
+}
@@ -4,6 +4,7 @@ import java.util.Map;
 
 import enums.CardStatus;
 import enums.CardType;
+import utils.GenerateMapper;
 
 final public class PrepaidCard extends Card {
     public static final String TABLE_NAME = "prepaid_cards";
@@ -12,6 +13,7 @@ final public class PrepaidCard extends Card {
     public static Map<String, Object> OFFER2 = Map.of("available_balance", 10000.0);
     public static Map<String, Object> OFFER3 = Map.of("available_balance", 15000.0);
 
+    @GenerateMapper(insertable = false)
     public PrepaidCard(int id, String expirationDate, String status, int userId,
             double availableBalance) {
         super(id, expirationDate, status, CardType.PREPAID.name(), userId);
@@ -1,5 +1,8 @@
 package entities;
 
+import utils.GenerateMapper;
+
+@GenerateMapper(generatedKeys = "id")
 public record User(
                 int id,
                 String name,
@@ -0,0 +1,17 @@
+package enums;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+public enum SpendPeriod {
+    DAY,
+    MONTH;
+
+    // First day of the bucket the given instant falls into
+    public LocalDate startOf(LocalDateTime date) {
+        return switch (this) {
+            case DAY -> date.toLocalDate();
+            case MONTH -> date.toLocalDate().withDayOfMonth(1);
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package fraud;
+
+import java.util.Optional;
+import java.util.Set;
+
+import entities.CardOperation;
+import enums.AlertLevel;
+import services.CardProfileStore;
+import services.CardProfileStore.CardProfile;
+
+/**
+ * Amounts far above what the card usually spends, measured in standard
+ * deviations of its learnt profile. An operation type the card rarely uses
+ * needs only half the deviation.
+ */
+public class AmountAnomalyRule implements FraudRule {
+    public static final double DEFAULT_MAX_Z_SCORE = 4.0;
+    public static final int DEFAULT_MIN_OBSERVATIONS = 10;
+    public static final double DEFAULT_RARE_TYPE_SHARE = 0.05;
+
+    // Cards spending the same amount every time would otherwise flag any change
+    private static final double MIN_STD_DEV_SHARE = 0.1;
+    private static final double MIN_STD_DEV = 1.0;
+
+    private final CardProfileStore profiles;
+    private final double maxZScore;
+    private final int minObservations;
+    private final double rareTypeShare;
+
+    /**
+     * @param profiles        learnt card profiles
+     * @param maxZScore       deviations above the mean that are still normal
+     * @param minObservations operations a profile needs before it is trusted
+     * @param rareTypeShare   share under which an operation type is unusual
+     *                        for the card
+     */
+    public AmountAnomalyRule(CardProfileStore profiles, double maxZScore, int minObservations, double rareTypeShare) {
+        this.profiles = profiles;
+        this.maxZScore = maxZScore;
+        this.minObservations = minObservations;
+        this.rareTypeShare = rareTypeShare;
+    }
+
+    @Override
+    public String name() {
+        return "amount-anomaly";
+    }
+
+    @Override
+    public Set<FraudInput> inputs() {
+        return Set.of(FraudInput.OPERATION, FraudInput.CARD_PROFILE);
+    }
+
+    @Override
+    public Optional<FraudFinding> evaluate(FraudContext context) {
+        CardOperation operation = context.operation();
+        Optional<CardProfile> found = profiles.profileOf(context.card().getId());
+        if (found.isEmpty() || found.get().observations() < minObservations)
+            return Optional.empty();
+
+        CardProfile profile = found.get();
+        double z = profile.zScore(operation.amount(),
+                Math.max(MIN_STD_DEV, profile.meanAmount() * MIN_STD_DEV_SHARE));
+        boolean rareType = profile.typeShares().getOrDefault(operation.getTypeEnum(), 0.0) < rareTypeShare;
+        if (z <= (rareType ? maxZScore / 2 : maxZScore))
+            return Optional.empty();
+
+        return Optional.of(new FraudFinding(name(), String.format(
+                "Unusual amount: %.2f is %.1f standard deviations above the card's usual %.2f%s",
+                operation.amount(), z, profile.meanAmount(), rareType ? " for a rarely used operation type" : ""),
+                AlertLevel.AVERTISSEMENT));
+    }
+}
@@ -0,0 +1,48 @@
+package fraud;
+
+import java.util.Optional;
+import java.util.Set;
+
+import enums.AlertLevel;
+import services.AlertCounterStore;
+
+/**
+ * Cards that already collected several warnings within the alert window
+ */
+public class EscalationRule implements FraudRule {
+    public static final int DEFAULT_WARNINGS = 2;
+
+    private final AlertCounterStore alertCounters;
+    private final int maxWarnings;
+
+    public EscalationRule(AlertCounterStore alertCounters, int maxWarnings) {
+        this.alertCounters = alertCounters;
+        this.maxWarnings = maxWarnings;
+    }
+
+    @Override
+    public String name() {
+        return "escalation";
+    }
+
+    @Override
+    public Set<FraudInput> inputs() {
+        return Set.of(FraudInput.ALERT_COUNTS);
+    }
+
+    @Override
+    public void prefetch(FraudContext context) {
+        alertCounters.load(context.card().getId());
+    }
+
+    @Override
+    public Optional<FraudFinding> evaluate(FraudContext context) {
+        int warnings = alertCounters.count(context.card().getId(), AlertLevel.AVERTISSEMENT,
+                context.operation().date());
+        if (warnings < maxWarnings)
+            return Optional.empty();
+
+        return Optional.of(new FraudFinding(name(), "Escalation: Multiple warnings detected in last "
+                + alertCounters.windowHours() + " hours", AlertLevel.CRITIQUE));
+    }
+}
@@ -0,0 +1,52 @@
+package fraud;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+import entities.Card;
+import entities.CardOperation;
+import services.OperationWindowStore.WindowEntry;
+
+/**
+ * What the rules evaluate: the card, the operation being authorized, and its
+ * recent operations, loaded on first use and shared by every rule. Rules may
+ * read it from several threads at once; the recent operations are still
+ * loaded only once.
+ */
+public final class FraudContext {
+    private final Card card;
+    private final CardOperation operation;
+    // A FutureTask runs once and parks concurrent readers without pinning virtual threads
+    private final FutureTask<List<WindowEntry>> recent;
+
+    public FraudContext(Card card, CardOperation operation, Supplier<List<WindowEntry>> recentLoader) {
+        this.card = card;
+        this.operation = operation;
+        this.recent = new FutureTask<>(recentLoader::get);
+    }
+
+    public Card card() {
+        return card;
+    }
+
+    public CardOperation operation() {
+        return operation;
+    }
+
+    /**
+     * @return the card's operations within the engine's lookback, oldest first
+     */
+    public List<WindowEntry> recentOperations() {
+        recent.run();
+        try {
+            return recent.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading recent operations", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package fraud;
+
+import enums.AlertLevel;
+
+/**
+ * A rule's reason to decline an operation
+ *
+ * @param rule        name of the rule that fired
+ * @param description alert message
+ * @param level       alert level, which decides what happens to the card
+ */
+public record FraudFinding(String rule, String description, AlertLevel level) {
+}
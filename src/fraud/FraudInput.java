@@ -0,0 +1,27 @@
+package fraud;
+
+/**
+ * Data a fraud rule reads, from the cheapest to the most expensive to get
+ */
+public enum FraudInput {
+    /** The card and the operation being authorized, already loaded */
+    OPERATION(FraudRule.Cost.CHEAP),
+    /** The card's recent operations, held in memory */
+    RECENT_OPERATIONS(FraudRule.Cost.MEMORY),
+    /** Alerts raised on the card over the last hours, counted in memory */
+    ALERT_COUNTS(FraudRule.Cost.MEMORY),
+    /** The card's usual behaviour, learnt in memory */
+    CARD_PROFILE(FraudRule.Cost.MEMORY),
+    /** Recent operations of all the user's cards, totalled in memory */
+    USER_ACTIVITY(FraudRule.Cost.MEMORY);
+
+    private final FraudRule.Cost cost;
+
+    FraudInput(FraudRule.Cost cost) {
+        this.cost = cost;
+    }
+
+    public FraudRule.Cost cost() {
+        return cost;
+    }
+}
@@ -0,0 +1,70 @@
+package fraud;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * One fraud check run while an operation is authorized.
+ * <p>
+ * Rules only look at the {@link FraudContext}; they never write alerts or
+ * change the card, that is left to the caller of the {@link FraudRuleEngine}.
+ * The engine runs cheaper rules first and stops at the first finding, so a
+ * rule should declare every input it reads.
+ */
+public interface FraudRule {
+    /**
+     * Rough price of evaluating a rule, used to order them
+     */
+    enum Cost {
+        /** Arithmetic on the card and the operation */
+        CHEAP,
+        /** Scans in-process state */
+        MEMORY,
+        /** Goes to the database */
+        IO
+    }
+
+    String name();
+
+    /**
+     * @return the data this rule reads
+     */
+    Set<FraudInput> inputs();
+
+    /**
+     * @return how expensive this rule is, by default that of its most
+     *         expensive input
+     */
+    default Cost cost() {
+        return inputs().stream().map(FraudInput::cost).max(Comparator.naturalOrder()).orElse(Cost.CHEAP);
+    }
+
+    /**
+     * @return how far back before the operation this rule looks at recent
+     *         operations
+     */
+    default Duration lookback() {
+        return Duration.ZERO;
+    }
+
+    /**
+     * Load what this rule reads from a repository, on the thread authorizing
+     * the operation. In parallel mode the engine calls it before forking, so
+     * the lookups join the caller's unit of work and see what it wrote, and
+     * the forked evaluation only reads memory.
+     *
+     * @param context the card and the operation about to be checked
+     */
+    default void prefetch(FraudContext context) {
+    }
+
+    /**
+     * Check one operation
+     *
+     * @param context the card, the operation and lazily loaded inputs
+     * @return what was found, empty if the operation looks fine
+     */
+    Optional<FraudFinding> evaluate(FraudContext context);
+}
@@ -0,0 +1,260 @@
+package fraud;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import utils.Console;
+
+/**
+ * Registry of the fraud rules and the loop that runs them.
+ * <p>
+ * Rules run from the cheapest to the most expensive, in registration order
+ * within the same cost, and evaluation stops at the first finding, so an
+ * operation caught by an in-memory rule never pays for a database read. Every
+ * rule keeps its own evaluation, hit and latency counters.
+ * <p>
+ * In {@link Mode#PARALLEL} the cheap rules still run first, inline. Whatever
+ * the others read from a repository, the recent operations included, is then
+ * loaded on the caller's thread, inside its unit of work, and each of them
+ * gets a virtual thread that only reads memory. Results are read in rule
+ * order, so the finding returned is the one sequential mode would return,
+ * whichever thread finishes first; the rules after it are cancelled. Rules
+ * still running at the deadline are counted as a miss and, unless
+ * {@link OnDeadline#FINISH} is chosen, cancelled: the operation goes through
+ * without them.
+ */
+public class FraudRuleEngine {
+    public static final long DEFAULT_DEADLINE_MS = 200;
+
+    public enum Mode {
+        SEQUENTIAL,
+        PARALLEL
+    }
+
+    /**
+     * What a parallel decision does with the rules still running at its
+     * deadline
+     */
+    public enum OnDeadline {
+        /** Let the operation through without them */
+        APPROVE,
+        /** Wait for them: the decision is late but every rule is checked */
+        FINISH
+    }
+
+    private final List<RegisteredRule> rules = new CopyOnWriteArrayList<>();
+    private final Mode mode;
+    private final Duration deadline;
+    private final OnDeadline onDeadline;
+    private final AtomicLong deadlineMisses = new AtomicLong();
+
+    public FraudRuleEngine() {
+        this(Mode.SEQUENTIAL, Duration.ofMillis(DEFAULT_DEADLINE_MS), OnDeadline.APPROVE);
+    }
+
+    /**
+     * @param mode       how rules past the cheap ones are run
+     * @param deadline   time budget of one decision in parallel mode
+     * @param onDeadline what to do with the rules still running past it
+     */
+    public FraudRuleEngine(Mode mode, Duration deadline, OnDeadline onDeadline) {
+        this.mode = mode;
+        this.deadline = deadline;
+        this.onDeadline = onDeadline;
+    }
+
+    /**
+     * Add a rule, ordered by its cost among the existing ones
+     *
+     * @return this engine, for chaining
+     */
+    public FraudRuleEngine register(FraudRule rule) {
+        synchronized (rules) {
+            List<RegisteredRule> ordered = new ArrayList<>(rules);
+            ordered.add(new RegisteredRule(rule));
+            ordered.sort(Comparator.comparing(registered -> registered.rule.cost()));
+            rules.clear();
+            rules.addAll(ordered);
+        }
+        return this;
+    }
+
+    /**
+     * Run the rules until one of them fires
+     *
+     * @param context the operation to check
+     * @return the first finding, empty if every rule passed
+     */
+    public Optional<FraudFinding> evaluate(FraudContext context) {
+        if (mode == Mode.SEQUENTIAL) {
+            for (RegisteredRule registered : rules) {
+                Optional<FraudFinding> finding = registered.evaluate(context);
+                if (finding.isPresent())
+                    return finding;
+            }
+            return Optional.empty();
+        }
+
+        // Cheap rules cost less than a thread and can still spare the lookups
+        List<RegisteredRule> forked = new ArrayList<>();
+        for (RegisteredRule registered : rules) {
+            if (registered.rule.cost() != FraudRule.Cost.CHEAP) {
+                forked.add(registered);
+                continue;
+            }
+            Optional<FraudFinding> finding = registered.evaluate(context);
+            if (finding.isPresent())
+                return finding;
+        }
+        return forked.isEmpty() ? Optional.empty() : evaluateInParallel(context, forked);
+    }
+
+    private Optional<FraudFinding> evaluateInParallel(FraudContext context, List<RegisteredRule> forked) {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+
+        // Forked threads have no unit of work: they would borrow their own connections and miss the caller's writes
+        if (forked.stream().anyMatch(registered -> registered.rule.inputs().contains(FraudInput.RECENT_OPERATIONS)))
+            context.recentOperations();
+        for (RegisteredRule registered : forked) {
+            registered.rule.prefetch(context);
+        }
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        List<Future<Optional<FraudFinding>>> results = new ArrayList<>();
+        try {
+            for (RegisteredRule registered : forked) {
+                results.add(executor.submit(() -> registered.evaluate(context)));
+            }
+
+            // In rule order: a later rule's finding only counts once every earlier rule has passed
+            boolean late = false;
+            for (int i = 0; i < results.size(); i++) {
+                Future<Optional<FraudFinding>> result = results.get(i);
+                if (!late && !result.isDone()) {
+                    try {
+                        result.get(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    } catch (TimeoutException e) {
+                        deadlineMisses.incrementAndGet();
+                        late = true;
+                        int pending = (int) results.stream().filter(future -> !future.isDone()).count();
+                        if (onDeadline == OnDeadline.APPROVE) {
+                            Console.warn("Fraud rules missed their " + deadline.toMillis() + " ms deadline, "
+                                    + pending + " rule(s) skipped");
+                            return Optional.empty();
+                        }
+                        Console.warn("Fraud rules missed their " + deadline.toMillis() + " ms deadline, "
+                                + "waiting for " + pending + " rule(s)");
+                    }
+                }
+
+                Optional<FraudFinding> finding = result.get();
+                if (finding.isPresent())
+                    return finding;
+            }
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while evaluating fraud rules", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new RuntimeException(e.getCause());
+        } finally {
+            // Interrupt whatever is still running, without waiting for it
+            for (Future<Optional<FraudFinding>> result : results) {
+                result.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the longest lookback of the registered rules
+     */
+    public Duration lookback() {
+        Duration longest = Duration.ZERO;
+        for (RegisteredRule registered : rules) {
+            if (registered.rule.lookback().compareTo(longest) > 0)
+                longest = registered.rule.lookback();
+        }
+        return longest;
+    }
+
+    /**
+     * @return parallel decisions with rules still running at the deadline
+     */
+    public long getDeadlineMisses() {
+        return deadlineMisses.get();
+    }
+
+    /**
+     * @return counters of every rule, in evaluation order
+     */
+    public List<RuleStats> getStats() {
+        List<RuleStats> stats = new ArrayList<>();
+        for (RegisteredRule registered : rules) {
+            stats.add(registered.snapshot());
+        }
+        return stats;
+    }
+
+    private static final class RegisteredRule {
+        private final FraudRule rule;
+        private final AtomicLong evaluations = new AtomicLong();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        RegisteredRule(FraudRule rule) {
+            this.rule = rule;
+        }
+
+        Optional<FraudFinding> evaluate(FraudContext context) {
+            long start = System.nanoTime();
+            Optional<FraudFinding> finding = rule.evaluate(context);
+            long elapsed = System.nanoTime() - start;
+
+            evaluations.incrementAndGet();
+            totalNanos.addAndGet(elapsed);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+            if (finding.isPresent())
+                hits.incrementAndGet();
+            return finding;
+        }
+
+        RuleStats snapshot() {
+            return new RuleStats(rule.name(), rule.cost(), evaluations.get(), hits.get(), totalNanos.get(),
+                    maxNanos.get());
+        }
+    }
+
+    /**
+     * Snapshot of one rule's counters.
+     *
+     * @param rule        rule name
+     * @param cost        declared cost
+     * @param evaluations times the rule ran
+     * @param hits        times it fired
+     * @param totalNanos  cumulative evaluation time
+     * @param maxNanos    slowest evaluation
+     */
+    public record RuleStats(String rule, FraudRule.Cost cost, long evaluations, long hits, long totalNanos,
+            long maxNanos) {
+        public double hitRate() {
+            return evaluations == 0 ? 0.0 : (double) hits / evaluations;
+        }
+
+        public double averageMicros() {
+            return evaluations == 0 ? 0.0 : totalNanos / 1000.0 / evaluations;
+        }
+    }
+}
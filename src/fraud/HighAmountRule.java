@@ -0,0 +1,57 @@
+package fraud;
+
+import java.util.Optional;
+import java.util.Set;
+
+import enums.AlertLevel;
+import enums.CardType;
+
+/**
+ * Single operations above a per card type threshold; half again above it is
+ * critical
+ */
+public class HighAmountRule implements FraudRule {
+    public static final double DEFAULT_DEBIT_THRESHOLD = 10000.0;
+    public static final double DEFAULT_CREDIT_THRESHOLD = 20000.0;
+    public static final double DEFAULT_PREPAID_THRESHOLD = 5000.0;
+
+    private final double debitThreshold;
+    private final double creditThreshold;
+    private final double prepaidThreshold;
+
+    public HighAmountRule(double debitThreshold, double creditThreshold, double prepaidThreshold) {
+        this.debitThreshold = debitThreshold;
+        this.creditThreshold = creditThreshold;
+        this.prepaidThreshold = prepaidThreshold;
+    }
+
+    @Override
+    public String name() {
+        return "high-amount";
+    }
+
+    @Override
+    public Set<FraudInput> inputs() {
+        return Set.of(FraudInput.OPERATION);
+    }
+
+    @Override
+    public Optional<FraudFinding> evaluate(FraudContext context) {
+        double threshold = thresholdFor(context.card().getCardTypeEnum());
+        double amount = context.operation().amount();
+        if (amount <= threshold)
+            return Optional.empty();
+
+        AlertLevel level = amount > threshold * 1.5 ? AlertLevel.CRITIQUE : AlertLevel.AVERTISSEMENT;
+        return Optional.of(new FraudFinding(name(),
+                "High amount transaction detected: " + amount + " (threshold: " + threshold + ")", level));
+    }
+
+    private double thresholdFor(CardType type) {
+        return switch (type) {
+            case DEBIT -> debitThreshold;
+            case CREDIT -> creditThreshold;
+            case PREPAID -> prepaidThreshold;
+        };
+    }
+}
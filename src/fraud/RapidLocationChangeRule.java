@@ -0,0 +1,102 @@
+package fraud;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+
+import entities.CardOperation;
+import enums.AlertLevel;
+import services.Gazetteer;
+import services.LocationDictionary;
+import services.OperationWindowStore.WindowEntry;
+
+/**
+ * A move between two places faster than anyone can travel.
+ * <p>
+ * Both locations are resolved through the gazetteer and the implied speed
+ * between them compared to a maximum, with some slack for places of the same
+ * area. A location the gazetteer does not know falls back to the old check:
+ * any other location used on the card only moments before.
+ */
+public class RapidLocationChangeRule implements FraudRule {
+    public static final long DEFAULT_MINUTES = 10;
+    public static final double DEFAULT_MAX_SPEED_KMH = 900;
+    public static final long DEFAULT_LOOKBACK_HOURS = 12;
+
+    // Operations in neighbouring places may be made minutes apart
+    private static final double NEARBY_KM = 50;
+
+    private final Gazetteer gazetteer;
+    private final LocationDictionary locations;
+    private final double maxSpeedKmh;
+    private final Duration lookback;
+    private final Duration fallbackWindow;
+
+    /**
+     * @param gazetteer      where locations are resolved
+     * @param locations      names of the location ids in recent operations
+     * @param maxSpeedKmh    fastest plausible travel between two places
+     * @param lookback       how far back known places are compared
+     * @param fallbackWindow how close in time two unknown locations may not
+     *                       differ
+     */
+    public RapidLocationChangeRule(Gazetteer gazetteer, LocationDictionary locations, double maxSpeedKmh,
+            Duration lookback, Duration fallbackWindow) {
+        this.gazetteer = gazetteer;
+        this.locations = locations;
+        this.maxSpeedKmh = maxSpeedKmh;
+        this.lookback = lookback;
+        this.fallbackWindow = fallbackWindow;
+    }
+
+    @Override
+    public String name() {
+        return "rapid-location-change";
+    }
+
+    @Override
+    public Set<FraudInput> inputs() {
+        return Set.of(FraudInput.OPERATION, FraudInput.RECENT_OPERATIONS);
+    }
+
+    @Override
+    public Duration lookback() {
+        return lookback.compareTo(fallbackWindow) > 0 ? lookback : fallbackWindow;
+    }
+
+    @Override
+    public Optional<FraudFinding> evaluate(FraudContext context) {
+        CardOperation operation = context.operation();
+        // Unknown to the dictionary means no committed operation was made there: a new location
+        int locationId = locations.knownId(operation.location());
+        int to = gazetteer.idOf(operation.location());
+
+        for (WindowEntry op : context.recentOperations()) {
+            // Past operations whose location has no id cannot be named, let alone placed
+            if (op.locationId() == LocationDictionary.UNKNOWN || op.locationId() == locationId)
+                continue;
+
+            Duration elapsed = Duration.between(op.date(), operation.date()).abs();
+            String previous = locations.nameOf(op.locationId());
+            int from = gazetteer.idOf(previous);
+
+            if (from >= 0 && to >= 0) {
+                double km = gazetteer.distanceKm(from, to);
+                double hours = elapsed.toMillis() / 3_600_000.0;
+                if (km > NEARBY_KM + maxSpeedKmh * hours) {
+                    return Optional.of(new FraudFinding(name(), "Impossible travel detected: "
+                            + previous + " to " + operation.location() + ", " + Math.round(km)
+                            + " km in " + elapsed.toMinutes() + " minutes", AlertLevel.CRITIQUE));
+                }
+                continue;
+            }
+
+            if (elapsed.compareTo(fallbackWindow) < 0) {
+                return Optional.of(new FraudFinding(name(), "Rapid geographical change detected: "
+                        + previous + " to " + operation.location()
+                        + " in " + elapsed.toMinutes() + " minutes", AlertLevel.CRITIQUE));
+            }
+        }
+        return Optional.empty();
+    }
+}
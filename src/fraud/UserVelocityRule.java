@@ -0,0 +1,86 @@
+package fraud;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+
+import entities.CardOperation;
+import enums.AlertLevel;
+import services.UserActivityStore;
+import services.UserActivityStore.Totals;
+
+/**
+ * Too much activity on a user's cards taken together within a window, this
+ * operation included: too many operations, too large an amount, or too many
+ * different locations. Catches several cards of one account each kept under
+ * the per-card velocity limit.
+ */
+public class UserVelocityRule implements FraudRule {
+    public static final long DEFAULT_SHORT_MINUTES = 10;
+    public static final int DEFAULT_SHORT_COUNT = 6;
+    public static final double DEFAULT_SHORT_AMOUNT = 3000;
+    public static final int DEFAULT_SHORT_LOCATIONS = 3;
+    public static final long DEFAULT_LONG_MINUTES = 60;
+    public static final int DEFAULT_LONG_COUNT = 15;
+    public static final double DEFAULT_LONG_AMOUNT = 10000;
+    public static final int DEFAULT_LONG_LOCATIONS = 5;
+
+    private final UserActivityStore activity;
+    private final Duration window;
+    private final int maxCount;
+    private final double maxAmount;
+    private final int maxLocations;
+
+    /**
+     * @param activity     per-user activity, kept for this window
+     * @param window       time over which the user's operations add up
+     * @param maxCount     operations from which the user is flagged
+     * @param maxAmount    total amount above which the user is flagged
+     * @param maxLocations distinct locations above which the user is flagged
+     */
+    public UserVelocityRule(UserActivityStore activity, Duration window, int maxCount, double maxAmount,
+            int maxLocations) {
+        this.activity = activity;
+        this.window = window;
+        this.maxCount = maxCount;
+        this.maxAmount = maxAmount;
+        this.maxLocations = maxLocations;
+    }
+
+    @Override
+    public String name() {
+        return "user-velocity-" + window.toMinutes() + "m";
+    }
+
+    @Override
+    public Set<FraudInput> inputs() {
+        return Set.of(FraudInput.OPERATION, FraudInput.USER_ACTIVITY);
+    }
+
+    @Override
+    public void prefetch(FraudContext context) {
+        activity.load(context.card().getUserId());
+    }
+
+    @Override
+    public Optional<FraudFinding> evaluate(FraudContext context) {
+        CardOperation operation = context.operation();
+        Totals totals = activity.totalsWith(context.card().getUserId(), window, operation);
+        String within = " across the user's cards in less than " + window.toMinutes() + " minutes";
+
+        if (totals.count() >= maxCount)
+            return Optional.of(finding("Multiple transactions detected: " + totals.count() + " transactions"
+                    + within));
+        if (totals.amount() > maxAmount)
+            return Optional.of(finding(String.format("High total amount detected: %.2f", totals.amount())
+                    + within));
+        if (totals.distinctLocations() > maxLocations)
+            return Optional.of(finding("Many locations detected: " + totals.distinctLocations() + " locations"
+                    + within));
+        return Optional.empty();
+    }
+
+    private FraudFinding finding(String description) {
+        return new FraudFinding(name(), description, AlertLevel.AVERTISSEMENT);
+    }
+}
@@ -0,0 +1,60 @@
+package fraud;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Set;
+
+import entities.CardOperation;
+import enums.AlertLevel;
+import services.OperationWindowStore.WindowEntry;
+
+/**
+ * Too many operations on a card within a short time, this one included
+ */
+public class VelocityRule implements FraudRule {
+    public static final long DEFAULT_MINUTES = 2;
+    public static final int DEFAULT_COUNT = 3;
+
+    private final Duration window;
+    private final int maxCount;
+
+    public VelocityRule(Duration window, int maxCount) {
+        this.window = window;
+        this.maxCount = maxCount;
+    }
+
+    @Override
+    public String name() {
+        return "velocity";
+    }
+
+    @Override
+    public Set<FraudInput> inputs() {
+        return Set.of(FraudInput.OPERATION, FraudInput.RECENT_OPERATIONS);
+    }
+
+    @Override
+    public Duration lookback() {
+        return window;
+    }
+
+    @Override
+    public Optional<FraudFinding> evaluate(FraudContext context) {
+        CardOperation operation = context.operation();
+        LocalDateTime cutoff = operation.date().minus(window);
+
+        int count = 1;
+        for (WindowEntry op : context.recentOperations()) {
+            if (!op.id().equals(operation.id()) && op.date().isAfter(cutoff))
+                count++;
+        }
+
+        if (count < maxCount)
+            return Optional.empty();
+
+        return Optional.of(new FraudFinding(name(), "Multiple transactions detected in short time: "
+                + count + " transactions in less than " + window.toMinutes() + " minutes",
+                AlertLevel.AVERTISSEMENT));
+    }
+}
@@ -0,0 +1,273 @@
+package processors;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates an {@code EntityMapper} for every element annotated with
+ * {@code utils.GenerateMapper}, an {@code InsertableMapper} unless the
+ * annotation says the entity is not insertable.
+ * <p>
+ * Compiled on its own before the rest of the sources (see the
+ * compile-processors execution in pom.xml), so it only depends on the JDK and
+ * refers to the annotation and the runtime helpers by name.
+ */
+@SupportedAnnotationTypes(MapperProcessor.ANNOTATION)
+public class MapperProcessor extends AbstractProcessor {
+    static final String ANNOTATION = "utils.GenerateMapper";
+    private static final String MAPPER = "utils.EntityMapper";
+    private static final String INSERTABLE_MAPPER = "utils.InsertableMapper";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                try {
+                    generate(element);
+                } catch (IllegalArgumentException | IOException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), element);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void generate(Element element) throws IOException {
+        TypeElement entity;
+        List<Param> params = new ArrayList<>();
+
+        if (element.getKind() == ElementKind.RECORD) {
+            entity = (TypeElement) element;
+            for (RecordComponentElement component : entity.getRecordComponents()) {
+                String name = component.getSimpleName().toString();
+                params.add(new Param(name, component.asType(), name + "()"));
+            }
+        } else if (element.getKind() == ElementKind.CONSTRUCTOR) {
+            entity = (TypeElement) element.getEnclosingElement();
+            for (VariableElement parameter : ((ExecutableElement) element).getParameters()) {
+                String name = parameter.getSimpleName().toString();
+                params.add(new Param(name, parameter.asType(), getterOf(entity, name)));
+            }
+        } else {
+            throw new IllegalArgumentException("@GenerateMapper goes on a record or a constructor");
+        }
+
+        List<String> generatedKeys = generatedKeysOf(element);
+        boolean insertable = insertableOf(element);
+        String packageName = processingEnv.getElementUtils().getPackageOf(entity).getQualifiedName().toString();
+        String entityName = entity.getSimpleName().toString();
+        String mapperName = entityName + "Mapper";
+
+        try (Writer out = processingEnv.getFiler()
+                .createSourceFile(packageName + "." + mapperName, entity)
+                .openWriter()) {
+            out.write(source(packageName, entityName, mapperName, params, generatedKeys, insertable));
+        }
+    }
+
+    private String source(String packageName, String entity, String mapper, List<Param> params,
+            List<String> generatedKeys, boolean insertable) {
+        StringBuilder columns = new StringBuilder();
+        StringBuilder insertColumns = new StringBuilder();
+        StringBuilder read = new StringBuilder();
+        StringBuilder fromData = new StringBuilder();
+        StringBuilder bind = new StringBuilder();
+
+        for (int i = 0; i < params.size(); i++) {
+            Param p = params.get(i);
+            String column = snake(p.name());
+            String separator = i + 1 < params.size() ? "," : "";
+
+            columns.append(i == 0 ? "" : ", ").append('"').append(column).append('"');
+            read.append("\n                ").append(readExpression(p.type(), i)).append(separator);
+            fromData.append("\n                ").append(dataExpression(p.type(), column, p.name())).append(separator);
+
+            if (!generatedKeys.contains(column)) {
+                insertColumns.append(insertColumns.length() == 0 ? "" : ", ").append('"').append(column).append('"');
+                bind.append("        stmt.setObject(index++, EntityMapper.toJdbcValue(entity.")
+                        .append(p.accessor()).append("));\n");
+            }
+        }
+
+        // Entities stored across several tables are inserted by hand, they get a read-only mapper
+        String insert = !insertable ? "" : "    @Override\n"
+                + "    public List<String> insertColumns() {\n"
+                + "        return INSERT_COLUMNS;\n    }\n\n"
+                + "    @Override\n"
+                + "    public int bind(PreparedStatement stmt, " + entity + " entity, int index)"
+                + " throws SQLException {\n"
+                + bind
+                + "        return index;\n    }\n\n";
+
+        return "package " + packageName + ";\n\n"
+                + (insertable ? "import java.sql.PreparedStatement;\n" : "")
+                + "import java.sql.ResultSet;\n"
+                + "import java.sql.SQLException;\n"
+                + "import java.util.List;\n"
+                + "import java.util.Map;\n\n"
+                + "import " + MAPPER + ";\n"
+                + (insertable ? "import " + INSERTABLE_MAPPER + ";\n" : "")
+                + "\n"
+                + "// Generated by " + MapperProcessor.class.getName() + " from " + entity + ", do not edit\n"
+                + "public final class " + mapper + " implements "
+                + (insertable ? "InsertableMapper<" : "EntityMapper<") + entity + "> {\n"
+                + "    public static final " + mapper + " INSTANCE = new " + mapper + "();\n\n"
+                + "    private static final List<String> COLUMNS = List.of(" + columns + ");\n"
+                + (insertable ? "    private static final List<String> INSERT_COLUMNS = List.of(" + insertColumns
+                        + ");\n" : "")
+                + "\n"
+                + "    private " + mapper + "() {\n    }\n\n"
+                + "    @Override\n"
+                + "    public Class<" + entity + "> type() {\n"
+                + "        return " + entity + ".class;\n    }\n\n"
+                + "    @Override\n"
+                + "    public List<String> columns() {\n"
+                + "        return COLUMNS;\n    }\n\n"
+                + insert
+                + "    @Override\n"
+                + "    public " + entity + " read(ResultSet rs, int[] columns) throws SQLException {\n"
+                + "        return new " + entity + "(" + read + ");\n    }\n\n"
+                + "    @Override\n"
+                + "    public " + entity + " fromData(Map<String, Object> data) {\n"
+                + "        return new " + entity + "(" + fromData + ");\n    }\n"
+                + "}\n";
+    }
+
+    private String readExpression(TypeMirror type, int i) {
+        String index = "columns[" + i + "]";
+        String missing = "columns[" + i + "] == 0 ? ";
+
+        switch (type.getKind()) {
+            case INT:
+                return missing + "0 : rs.getInt(" + index + ")";
+            case LONG:
+                return missing + "0L : rs.getLong(" + index + ")";
+            case DOUBLE:
+                return missing + "0.0 : rs.getDouble(" + index + ")";
+            case BOOLEAN:
+                return missing + "false : rs.getBoolean(" + index + ")";
+            case DECLARED:
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported column type " + type);
+        }
+
+        return missing + "null : " + switch (type.toString()) {
+            case "java.lang.String" -> "rs.getString(" + index + ")";
+            case "java.math.BigDecimal" -> "rs.getBigDecimal(" + index + ")";
+            case "java.util.UUID" -> "EntityMapper.readUuid(rs, " + index + ")";
+            case "java.time.LocalDateTime" -> "EntityMapper.readLocalDateTime(rs, " + index + ")";
+            case "java.time.LocalDate" -> "EntityMapper.readLocalDate(rs, " + index + ")";
+            default -> "utils.Hydrator.castValueToType(rs.getObject(" + index + "), " + erasure(type) + ".class)";
+        };
+    }
+
+    private String dataExpression(TypeMirror type, String column, String name) {
+        String keys = column.equals(name) ? "\"" + column + "\"" : "\"" + column + "\", \"" + name + "\"";
+        return switch (type.getKind()) {
+            case INT -> "EntityMapper.intOf(data, " + keys + ")";
+            case LONG -> "EntityMapper.longOf(data, " + keys + ")";
+            case DOUBLE -> "EntityMapper.doubleOf(data, " + keys + ")";
+            case BOOLEAN -> "EntityMapper.booleanOf(data, " + keys + ")";
+            case DECLARED -> "EntityMapper.valueOf(data, " + erasure(type) + ".class, " + keys + ")";
+            default -> throw new IllegalArgumentException("Unsupported column type " + type);
+        };
+    }
+
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    /**
+     * Accessor for a constructor parameter: getX() on the class or one of its
+     * superclasses
+     */
+    private String getterOf(TypeElement entity, String name) {
+        String getter = "get" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (TypeElement type = entity; type != null; type = superclassOf(type)) {
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if (method.getSimpleName().contentEquals(getter) && method.getParameters().isEmpty()
+                        && method.getModifiers().contains(Modifier.PUBLIC)) {
+                    return getter + "()";
+                }
+            }
+        }
+        throw new IllegalArgumentException("No public " + getter + "() for constructor parameter " + name);
+    }
+
+    private TypeElement superclassOf(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED
+                ? (TypeElement) processingEnv.getTypeUtils().asElement(superclass)
+                : null;
+    }
+
+    private List<String> generatedKeysOf(Element element) {
+        List<String> keys = new ArrayList<>();
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (!mirror.getAnnotationType().toString().equals(ANNOTATION))
+                continue;
+            mirror.getElementValues().forEach((name, value) -> {
+                if (name.getSimpleName().contentEquals("generatedKeys")) {
+                    for (Object key : (List<?>) value.getValue()) {
+                        keys.add((String) ((AnnotationValue) key).getValue());
+                    }
+                }
+            });
+        }
+        return keys;
+    }
+
+    private boolean insertableOf(Element element) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (!mirror.getAnnotationType().toString().equals(ANNOTATION))
+                continue;
+            for (var entry : mirror.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("insertable"))
+                    return (Boolean) entry.getValue().getValue();
+            }
+        }
+        return true;
+    }
+
+    private static String snake(String camel) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : camel.toCharArray()) {
+            if (Character.isUpperCase(c)) {
+                sb.append('_').append(Character.toLowerCase(c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private record Param(String name, TypeMirror type, String accessor) {
+    }
+}
@@ -0,0 +1,155 @@
+package repositories;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import entities.Card;
+
+/**
+ * Read-through LRU cache in front of another card repository.
+ * <p>
+ * Only {@link #findById(String)} is served from the cache. Every write drops
+ * the card's entry, once right away and once more when the surrounding unit
+ * of work completes, so a reload racing with an uncommitted write cannot
+ * leave a stale card behind. Cards are mutable, so callers always get a copy.
+ */
+public class CachedCardRepository implements CardRepositoryContract {
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final CardRepositoryContract delegate;
+    private final UnitOfWork unitOfWork;
+    private final int maxSize;
+    private final LinkedHashMap<Integer, Card> entries;
+
+    // Bumped on every invalidation; a load only fills the cache if none happened meanwhile
+    private long generation = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param unitOfWork the unit writes to the delegate run in, so entries are
+     *                   dropped again once it completes
+     */
+    public CachedCardRepository(CardRepositoryContract delegate, UnitOfWork unitOfWork, int maxSize) {
+        this.delegate = delegate;
+        this.unitOfWork = unitOfWork;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Card> eldest) {
+                if (size() <= CachedCardRepository.this.maxSize)
+                    return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public Optional<Card> findById(String id) {
+        int cardId = Integer.parseInt(id);
+        long loadGeneration;
+
+        synchronized (this) {
+            Card cached = entries.get(cardId);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return Optional.of(InMemoryCardRepository.copyOf(cached));
+            }
+            loadGeneration = generation;
+        }
+
+        misses.incrementAndGet();
+        Optional<Card> loaded = delegate.findById(id);
+
+        if (loaded.isPresent()) {
+            Card copy = InMemoryCardRepository.copyOf(loaded.get());
+            synchronized (this) {
+                if (generation == loadGeneration)
+                    entries.put(cardId, copy);
+            }
+        }
+        return loaded;
+    }
+
+    @Override
+    public List<Card> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<Card> findByIds(Collection<Integer> ids) {
+        return delegate.findByIds(ids);
+    }
+
+    @Override
+    public List<Card> findAllByUserId(String userId) {
+        return delegate.findAllByUserId(userId);
+    }
+
+    @Override
+    public Card create(Map<String, Object> data) {
+        return delegate.create(data);
+    }
+
+    @Override
+    public void update(Card entity, Map<String, Object> fieldsToUpdate) {
+        try {
+            delegate.update(entity, fieldsToUpdate);
+        } finally {
+            invalidate(entity.getId());
+        }
+    }
+
+    @Override
+    public boolean debitPrepaidBalance(int cardId, double amount) {
+        try {
+            return delegate.debitPrepaidBalance(cardId, amount);
+        } finally {
+            invalidate(cardId);
+        }
+    }
+
+    @Override
+    public void deleteById(String id) {
+        try {
+            delegate.deleteById(id);
+        } finally {
+            invalidate(Integer.parseInt(id));
+        }
+    }
+
+    /**
+     * Drop a card from the cache now and again once the current unit of work
+     * has committed or rolled back
+     */
+    public void invalidate(int cardId) {
+        evict(cardId);
+        unitOfWork.afterCompletion(() -> evict(cardId));
+    }
+
+    private synchronized void evict(int cardId) {
+        generation++;
+        entries.remove(cardId);
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(entries.size(), maxSize, hits.get(), misses.get(), evictions.get());
+    }
+
+    /**
+     * Snapshot of the cache counters
+     */
+    public record CacheStats(int size, int maxSize, long hits, long misses, long evictions) {
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+}
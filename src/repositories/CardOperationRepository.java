@@ -1,79 +1,98 @@
 package repositories;
 
+import java.sql.Connection;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import entities.CardOperation;
+import entities.CardOperationMapper;
+import enums.OperationType;
 import services.DBConnection;
+import services.LocationDictionary;
 import utils.Console;
-import utils.Hydrator;
+import utils.LocationNames;
 
-public class CardOperationRepository extends RepositoryBase implements RepositoryContract<CardOperation> {
+public class CardOperationRepository extends RepositoryBase implements CardOperationRepositoryContract {
     public static final String TABLE_NAME = "card_operations";
     private final DBConnection connection;
+    private final SpendCounterRepository spendCounterRepository;
 
-    public CardOperationRepository(DBConnection connection) {
+    // The location as typed is kept; its normalized form, stored next to it, is what location filters compare
+    private static final String INSERT_SQL = "INSERT INTO " + TABLE_NAME + " ("
+            + String.join(", ", CardOperationMapper.INSTANCE.insertColumns()) + ", normalized_location) VALUES ("
+            + "?, ".repeat(CardOperationMapper.INSTANCE.insertColumns().size()) + "?)";
+
+    public CardOperationRepository(DBConnection connection, SpendCounterRepository spendCounterRepository) {
         this.connection = connection;
+        this.spendCounterRepository = spendCounterRepository;
     }
 
     @Override
     public Optional<CardOperation> findById(String id) {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * from " + TABLE_NAME + " WHERE id = ? LIMIT 1", id);
-            if (rs.next())
-                return Optional.of(Hydrator.mapRow(Hydrator.resultSetToMap(rs), CardOperation.class));
-            return Optional.empty();
+            try (var conn = connectionOf(connection)) {
+                return queryFirst(conn, "SELECT * from " + TABLE_NAME + " WHERE id = ? LIMIT 1",
+                        CardOperationMapper.INSTANCE, id);
+            }
         });
     }
 
     @Override
     public List<CardOperation> findAll() {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * FROM " + TABLE_NAME);
-            ArrayList<CardOperation> co = new ArrayList<>();
-            while (rs.next()) {
-                co.add(Hydrator.mapRow(Hydrator.resultSetToMap(rs), CardOperation.class));
+            try (var conn = connectionOf(connection)) {
+                return readOperations(conn, "SELECT * FROM " + TABLE_NAME);
             }
-            return co;
         });
     }
 
+    /**
+     * Insert an operation and bump its spend counters in one transaction
+     */
     @Override
     public CardOperation create(Map<String, Object> data) {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var stmt = conn.prepareStatement(
-                    "INSERT INTO " + TABLE_NAME + " " + fieldsOf(data) + " VALUES "
-                            + bindingTemplateOf(data));
-
-            int index = 1;
-            for (Object val : data.values()) {
-                // Special handling for UUID values
-                if (val instanceof UUID) {
-                    stmt.setString(index++, val.toString());
-                } else {
-                    stmt.setObject(index++, val);
-                }
-            }
+            CardOperation operation = CardOperationMapper.INSTANCE.fromData(data);
 
-            int isAffected = stmt.executeUpdate();
-            if (isAffected == 0)
-                throw new Exception("Failed to create Card Operation");
-            return Hydrator.mapRow(data, CardOperation.class);
+            return transactionally(connection, () -> {
+                try (var conn = connectionOf(connection)) {
+                    try (var stmt = conn.prepareStatement(INSERT_SQL)) {
+                        int next = CardOperationMapper.INSTANCE.bind(stmt, operation, 1);
+                        stmt.setString(next, normalizedOf(operation.location()));
+                        if (stmt.executeUpdate() == 0)
+                            throw new Exception("Inserting into " + TABLE_NAME + " failed, no rows affected.");
+                    }
+                    spendCounterRepository.increment(conn, operation.cardId(), operation.date(), operation.amount());
+                }
+                return operation;
+            });
         });
     }
 
+    /**
+     * Delete an operation and take it out of its spend counters in one
+     * transaction
+     */
     @Override
     public void deleteById(String id) {
-        executeSafely(() -> {
-            var conn = connection.getConnection();
-            executeUpdate(conn, "DELETE FROM " + TABLE_NAME + " WHERE id = ?", id);
-        });
+        executeSafely(() -> transactionally(connection, () -> {
+            try (var conn = connectionOf(connection)) {
+                Optional<CardOperation> removed = lockedById(conn, id);
+                if (removed.isPresent()) {
+                    CardOperation operation = removed.get();
+                    executeUpdate(conn, "DELETE FROM " + TABLE_NAME + " WHERE id = ?", id);
+                    spendCounterRepository.decrement(conn, operation.cardId(), operation.date(), operation.amount());
+                }
+            }
+            return null;
+        }));
     }
 
     @Override
@@ -81,37 +100,257 @@ public class CardOperationRepository extends RepositoryBase implements Repositor
         CardOperation[] cardOperationRef = { co };
         cardOperationRef[0] = executeSafely(() -> {
             Map<String, Object> filteredData = filterID(data);
-            var conn = connection.getConnection();
-            var stmt = conn
-                    .prepareStatement("UPDATE " + TABLE_NAME + " " + setClauseOf(filteredData) + " WHERE id = ?");
+            if (filteredData.get("location") != null)
+                filteredData.put("normalized_location", normalizedOf(filteredData.get("location").toString()));
+            return transactionally(connection, () -> {
+                try (var conn = connectionOf(connection)) {
+                    String id = co.id().toString();
+                    Optional<CardOperation> before = lockedById(conn, id);
+                    SqlTemplate update = updateTemplate(TABLE_NAME, filteredData.keySet(), "id");
+                    executeUpdate(conn, update.sql(), update.params(filteredData, id));
+
+                    // Counters follow the stored row, whichever of card, date and amount changed
+                    Optional<CardOperation> after = queryFirst(conn, "SELECT * FROM " + TABLE_NAME
+                            + " WHERE id = ?", CardOperationMapper.INSTANCE, id);
+                    if (before.isPresent() && after.isPresent()) {
+                        CardOperation old = before.get();
+                        CardOperation now = after.get();
+                        spendCounterRepository.decrement(conn, old.cardId(), old.date(), old.amount());
+                        spendCounterRepository.increment(conn, now.cardId(), now.date(), now.amount());
+                    }
+                    return CardOperationMapper.INSTANCE.fromData(filteredData);
+                }
+            });
+        });
+    }
+
+    // Held until the transaction ends, so counters move with exactly one version of the row
+    private Optional<CardOperation> lockedById(Connection conn, String id) throws Exception {
+        return queryFirst(conn, "SELECT * FROM " + TABLE_NAME + " WHERE id = ? FOR UPDATE",
+                CardOperationMapper.INSTANCE, id);
+    }
+
+    @Override
+    public List<CardOperation> findCardOperationsOf(String cardId) {
+        return executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                return readOperations(conn, "SELECT * FROM " + TABLE_NAME + " WHERE card_id = ?", cardId);
+            }
+        });
+    }
+
+    @Override
+    public Stream<CardOperation> streamCardOperationsOf(String cardId) {
+        return stream(OperationQuery.forCard(Integer.parseInt(cardId)));
+    }
+
+    @Override
+    public Stream<CardOperation> streamAll() {
+        return executeSafely(() -> queryStream(connection, "SELECT * FROM " + TABLE_NAME,
+                CardOperationMapper.INSTANCE));
+    }
 
-            int index = 1;
-            for (Object val : data.values()) {
-                stmt.setObject(index++, val);
+    @Override
+    public List<CardOperation> find(OperationQuery query) {
+        return executeSafely(() -> {
+            SqlQuery select = toSql(query, query.limit());
+            try (var conn = connectionOf(connection)) {
+                return queryList(conn, select.sql(), CardOperationMapper.INSTANCE, select.params());
             }
-            stmt.setString(index, co.id().toString());
-            stmt.executeUpdate();
+        });
+    }
 
-            return Hydrator.mapRow(filteredData, CardOperation.class);
+    @Override
+    public Stream<CardOperation> stream(OperationQuery query) {
+        return executeSafely(() -> {
+            SqlQuery select = toSql(query, query.limit());
+            return queryStream(connection, select.sql(), CardOperationMapper.INSTANCE, select.params());
         });
     }
 
-    public List<CardOperation> findCardOperationsOf(String cardId) {
+    /**
+     * One keyset page of the matching operations. With a card, the
+     * (card_id, date) index also carries the primary key, so each page is a
+     * short index range scan starting right after the cursor.
+     */
+    @Override
+    public Page<CardOperation> findPage(OperationQuery query, int pageSize) {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * FROM " + TABLE_NAME + " WHERE card_id = ?", cardId);
-            ArrayList<CardOperation> co = new ArrayList<>();
-            while (rs.next()) {
-                try {
-                    CardOperation operation = Hydrator.mapRow(Hydrator.resultSetToMap(rs), CardOperation.class);
-                    co.add(operation);
-                } catch (Exception e) {
-                    // Log the error but continue processing other operations
-                    Console.error("Failed to hydrate operation: " + e.getMessage());
-                    e.printStackTrace();
+            SqlQuery select = toSql(query, pageSize + 1);
+            try (var conn = connectionOf(connection)) {
+                List<CardOperation> rows = queryList(conn, select.sql(), CardOperationMapper.INSTANCE,
+                        select.params());
+                return Page.of(rows, pageSize, op -> new PageCursor(op.date(), op.id()));
+            }
+        });
+    }
+
+    /**
+     * Operations of a card from a point in time onwards, oldest first. Served
+     * by the (card_id, date) index so the cost depends on recent activity only.
+     *
+     * @param cardId ID of the card
+     * @param from   inclusive lower bound
+     * @return matching operations
+     */
+    @Override
+    public List<CardOperation> findCardOperationsOfSince(String cardId, LocalDateTime from) {
+        return executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                return readOperations(conn,
+                        "SELECT * FROM " + TABLE_NAME + " WHERE card_id = ? AND date >= ? ORDER BY date",
+                        cardId, from);
+            }
+        });
+    }
+
+    /**
+     * Operations of a card within a time range, oldest first
+     *
+     * @param cardId ID of the card
+     * @param from   inclusive lower bound
+     * @param to     inclusive upper bound
+     * @return matching operations
+     */
+    @Override
+    public List<CardOperation> findCardOperationsBetween(String cardId, LocalDateTime from, LocalDateTime to) {
+        return executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                return readOperations(conn,
+                        "SELECT * FROM " + TABLE_NAME + " WHERE card_id = ? AND date BETWEEN ? AND ? ORDER BY date",
+                        cardId, from, to);
+            }
+        });
+    }
+
+    /**
+     * One-off migration of rows written before normalized_location existed:
+     * fill it in, and add their locations to the dictionary. The location
+     * as typed is left untouched. Each distinct spelling is read once.
+     *
+     * @param locations where the locations of those rows are registered
+     * @return the number of rows migrated
+     */
+    public int migrateLocations(LocationDictionary locations) {
+        return executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                List<String> spellings = new ArrayList<>();
+                forEachRow(conn, "SELECT DISTINCT location FROM " + TABLE_NAME + " WHERE normalized_location IS NULL",
+                        row -> spellings.add(row.getString("location")));
+
+                int migrated = 0;
+                for (String spelling : spellings) {
+                    locations.idOf(spelling);
+                    migrated += executeUpdateCount(conn, "UPDATE " + TABLE_NAME
+                            + " SET normalized_location = ? WHERE location = ? AND normalized_location IS NULL",
+                            normalizedOf(spelling), spelling);
                 }
+                return migrated;
             }
-            return co;
         });
     }
+
+    /**
+     * Total amount spent on a card from a point in time onwards, computed by
+     * the database over the (card_id, date) index
+     *
+     * @param cardId ID of the card
+     * @param from   inclusive lower bound
+     * @return the sum, 0 when there are no operations
+     */
+    @Override
+    public double sumAmountSince(String cardId, LocalDateTime from) {
+        return executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                return executeQuery(conn,
+                        "SELECT COALESCE(SUM(amount), 0) FROM " + TABLE_NAME + " WHERE card_id = ? AND date >= ?",
+                        rs -> rs.next() ? rs.getDouble(1) : 0.0, cardId, from);
+            }
+        });
+    }
+
+    /**
+     * Translate a query to one parameterized SELECT. Only the criteria that
+     * are set become predicates, so the database can pick the matching index
+     * (card and date, date, type, or location) and each shape keeps its cached
+     * statement.
+     */
+    private SqlQuery toSql(OperationQuery query, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT o.* FROM " + TABLE_NAME + " o");
+        List<String> where = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+
+        if (query.userId() != null) {
+            sql.append(" JOIN " + CardRepository.TABLE_NAME + " c ON c.id = o.card_id");
+            where.add("c.user_id = ?");
+            params.add(query.userId());
+        }
+        if (query.cardId() != null) {
+            where.add("o.card_id = ?");
+            params.add(query.cardId());
+        }
+        if (!query.types().isEmpty()) {
+            Set<OperationType> types = EnumSet.copyOf(query.types());
+            where.add("o.type IN (" + String.join(", ", Collections.nCopies(types.size(), "?")) + ")");
+            params.addAll(types);
+        }
+        if (query.from() != null) {
+            where.add("o.date >= ?");
+            params.add(query.from());
+        }
+        if (query.to() != null) {
+            where.add("o.date <= ?");
+            params.add(query.to());
+        }
+        if (query.minAmount() != null) {
+            where.add("o.amount >= ?");
+            params.add(query.minAmount());
+        }
+        if (query.maxAmount() != null) {
+            where.add("o.amount <= ?");
+            params.add(query.maxAmount());
+        }
+        if (query.location() != null) {
+            // Any spelling of the location matches, as in OperationQuery.matches
+            where.add("o.normalized_location = ?");
+            params.add(LocationNames.normalize(query.location()));
+        }
+
+        String direction = query.newestFirst() ? "DESC" : "ASC";
+        if (query.after() != null) {
+            String past = query.newestFirst() ? "<" : ">";
+            where.add("(o.date " + past + " ? OR (o.date = ? AND o.id " + past + " ?))");
+            Collections.addAll(params, query.after().date(), query.after().date(), query.after().id());
+        }
+
+        if (!where.isEmpty())
+            sql.append(" WHERE ").append(String.join(" AND ", where));
+        sql.append(" ORDER BY o.date ").append(direction).append(", o.id ").append(direction);
+        if (limit > 0) {
+            sql.append(" LIMIT ?");
+            params.add(limit);
+        }
+        return new SqlQuery(sql.toString(), params.toArray());
+    }
+
+    private static String normalizedOf(String location) {
+        return location == null ? null : LocationNames.normalize(location);
+    }
+
+    private record SqlQuery(String sql, Object[] params) {
+    }
+
+    private List<CardOperation> readOperations(Connection conn, String sql, Object... params) throws Exception {
+        ArrayList<CardOperation> co = new ArrayList<>();
+        forEachRow(conn, sql, row -> {
+            try {
+                co.add(row.as(CardOperationMapper.INSTANCE));
+            } catch (Exception e) {
+                // Log the error but continue processing other operations
+                Console.error("Failed to hydrate operation: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }, params);
+        return co;
+    }
 }
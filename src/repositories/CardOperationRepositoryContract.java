@@ -0,0 +1,89 @@
+package repositories;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import entities.CardOperation;
+
+public interface CardOperationRepositoryContract extends RepositoryContract<CardOperation> {
+    /**
+     * Every operation of a card
+     *
+     * @param cardId ID of the card
+     * @return the card's operations
+     */
+    List<CardOperation> findCardOperationsOf(String cardId);
+
+    /**
+     * Every operation of a card, newest first, read lazily. Holds resources
+     * until closed, so use it in try-with-resources.
+     *
+     * @param cardId ID of the card
+     * @return the card's operations
+     */
+    Stream<CardOperation> streamCardOperationsOf(String cardId);
+
+    /**
+     * Every operation, read lazily. Holds resources until closed, so use it in
+     * try-with-resources.
+     *
+     * @return all operations
+     */
+    Stream<CardOperation> streamAll();
+
+    /**
+     * Operations matching a query, in the query's order
+     *
+     * @param query criteria, order and limit
+     * @return matching operations
+     */
+    List<CardOperation> find(OperationQuery query);
+
+    /**
+     * Operations matching a query, in the query's order, read lazily. Holds
+     * resources until closed, so use it in try-with-resources.
+     *
+     * @param query criteria, order and limit
+     * @return matching operations
+     */
+    Stream<CardOperation> stream(OperationQuery query);
+
+    /**
+     * One keyset page of the operations matching a query, starting after the
+     * query's cursor
+     *
+     * @param query    criteria, order and cursor; its limit is ignored
+     * @param pageSize maximum number of operations on the page
+     * @return the page and the cursor of the next one
+     */
+    Page<CardOperation> findPage(OperationQuery query, int pageSize);
+
+    /**
+     * Operations of a card from a point in time onwards, oldest first
+     *
+     * @param cardId ID of the card
+     * @param from   inclusive lower bound
+     * @return matching operations
+     */
+    List<CardOperation> findCardOperationsOfSince(String cardId, LocalDateTime from);
+
+    /**
+     * Operations of a card within a time range, oldest first
+     *
+     * @param cardId ID of the card
+     * @param from   inclusive lower bound
+     * @param to     inclusive upper bound
+     * @return matching operations
+     */
+    List<CardOperation> findCardOperationsBetween(String cardId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Total amount spent on a card from a point in time onwards
+     *
+     * @param cardId ID of the card
+     * @param from   inclusive lower bound
+     * @return the sum, 0 when there are no operations
+     */
+    double sumAmountSince(String cardId, LocalDateTime from);
+}
@@ -1,8 +1,9 @@
 package repositories;
 
 import java.sql.Connection;
-import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -13,17 +14,27 @@ import java.util.Set;
 
 import entities.Card;
 import entities.CreditCard;
+import entities.CreditCardMapper;
 import entities.DebitCard;
+import entities.DebitCardMapper;
 import entities.PrepaidCard;
+import entities.PrepaidCardMapper;
 import enums.CardType;
 import services.DBConnection;
 import utils.CaseConverter;
-import utils.Hydrator;
+import utils.EntityMapper;
 
-public class CardRepository extends RepositoryBase implements RepositoryContract<Card> {
+public class CardRepository extends RepositoryBase implements CardRepositoryContract {
     public static final String TABLE_NAME = "cards";
     public final DBConnection connection;
 
+    // Base row plus every subtype column, so one query hydrates any card type
+    private static final String SELECT_WITH_SUBTYPES = "SELECT c.*, cc.monthly_limit, cc.interest_rate,"
+            + " dc.daily_limit, pc.available_balance FROM " + TABLE_NAME + " c"
+            + " LEFT JOIN " + CreditCard.TABLE_NAME + " cc ON cc.card_id = c.id"
+            + " LEFT JOIN " + DebitCard.TABLE_NAME + " dc ON dc.card_id = c.id"
+            + " LEFT JOIN " + PrepaidCard.TABLE_NAME + " pc ON pc.card_id = c.id";
+
     public CardRepository(DBConnection connection) {
         this.connection = connection;
     }
@@ -31,61 +42,64 @@ public class CardRepository extends RepositoryBase implements RepositoryContract
     @Override
     public Optional<Card> findById(String id) {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * FROM " + TABLE_NAME + " WHERE id = ? LIMIT 1", id);
-
-            if (rs.next()) {
-                return Optional.of(createCardFromResultSet(conn, rs));
+            try (var conn = connectionOf(connection)) {
+                List<Card> cards = readCards(conn, SELECT_WITH_SUBTYPES + " WHERE c.id = ? LIMIT 1", id);
+                return cards.stream().findFirst();
             }
-            return Optional.empty();
         });
     }
 
     @Override
     public List<Card> findAll() {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * from " + TABLE_NAME);
-            List<Card> cards = new ArrayList<>();
-
-            while (rs.next()) {
-                cards.add(createCardFromResultSet(conn, rs));
+            try (var conn = connectionOf(connection)) {
+                return readCards(conn, SELECT_WITH_SUBTYPES);
             }
-            return cards;
         });
     }
 
     /**
-     * Creates a card entity from a result set based on its type
+     * Load several cards in a single round trip
+     *
+     * @param ids card ids to load, unknown ids are ignored
+     * @return the matching cards, fully hydrated
      */
-    private Card createCardFromResultSet(Connection conn, ResultSet rs) throws Exception {
-        CardType ct = CardType.valueOf(rs.getString("card_type"));
-        String id = rs.getString("id");
+    @Override
+    public List<Card> findByIds(Collection<Integer> ids) {
+        if (ids == null || ids.isEmpty())
+            return new ArrayList<>();
 
-        return switch (ct) {
-            case PREPAID -> fetchSupType(conn, id, PrepaidCard.class, PrepaidCard.TABLE_NAME, rs);
-            case DEBIT -> fetchSupType(conn, id, DebitCard.class, DebitCard.TABLE_NAME, rs);
-            case CREDIT -> fetchSupType(conn, id, CreditCard.class, CreditCard.TABLE_NAME, rs);
-        };
+        return executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+                return readCards(conn, SELECT_WITH_SUBTYPES + " WHERE c.id IN (" + placeholders + ")",
+                        ids.toArray());
+            }
+        });
+    }
+
+    private List<Card> readCards(Connection conn, String sql, Object... params) throws Exception {
+        List<Card> cards = new ArrayList<>();
+        forEachRow(conn, sql, row -> cards.add(createCardFromRow(row)), params);
+        return cards;
     }
 
     /**
-     * Fetches the subtype-specific data and creates the appropriate card entity
+     * Creates a card entity from a joined row based on its type
      */
-    private <T extends Card> T fetchSupType(Connection conn, String id, Class<T> clazz, String table, ResultSet baseRow)
-            throws Exception {
-        return executeSafely(() -> {
-            var rs = executeQuery(conn, "SELECT * FROM " + table + " WHERE card_id = ?", id);
+    private Card createCardFromRow(Row row) throws Exception {
+        CardType ct = CardType.valueOf(row.getString("card_type"));
+
+        // The LEFT JOIN leaves the subtype columns NULL when the subtype row is missing
+        String subtypeColumn = switch (ct) {
+            case PREPAID -> "available_balance";
+            case DEBIT -> "daily_limit";
+            case CREDIT -> "monthly_limit";
+        };
+        if (row.isNull(subtypeColumn))
+            throw new NoSuchElementException("No sub type found for card with id " + row.getInt("id"));
 
-            if (rs.next()) {
-                Map<String, Object> baseMap = Hydrator.resultSetToMap(baseRow);
-                Map<String, Object> subMap = Hydrator.resultSetToMap(rs);
-                baseMap.putAll(subMap);
-                return Hydrator.mapRow(baseMap, clazz);
-            } else {
-                throw new NoSuchElementException("No sub type found for card with id " + id);
-            }
-        });
+        return row.as(getMapperByType(ct));
     }
 
     @Override
@@ -99,11 +113,13 @@ public class CardRepository extends RepositoryBase implements RepositoryContract
             Map<String, Object> offer = getOffer(filteredData);
             filteredData.remove("offer");
 
-            // Insert base card record and get ID
-            int cardId = insertBaseCard(filteredData);
+            return transactionally(connection, () -> {
+                // Insert base card record and get ID
+                int cardId = insertBaseCard(filteredData);
 
-            // Insert subtype data and get complete card object
-            return insertSubTypeCard(cardId, offer, filteredData);
+                // Insert subtype data and get complete card object
+                return insertSubTypeCard(cardId, offer, filteredData);
+            });
         });
     }
 
@@ -111,28 +127,22 @@ public class CardRepository extends RepositoryBase implements RepositoryContract
      * Insert the base card record and return the generated ID
      */
     private int insertBaseCard(Map<String, Object> cardData) throws Exception {
-        var conn = connection.getConnection();
-        String fields = fieldsOf(cardData);
-        String bindingTemplate = bindingTemplateOf(cardData);
+        SqlTemplate insert = insertTemplate(TABLE_NAME, cardData.keySet());
 
-        var stmt = conn.prepareStatement(
-                "INSERT INTO " + TABLE_NAME + " " + fields + " VALUES " + bindingTemplate,
-                java.sql.Statement.RETURN_GENERATED_KEYS);
+        try (var conn = connectionOf(connection);
+                var stmt = conn.prepareStatement(insert.sql(), java.sql.Statement.RETURN_GENERATED_KEYS)) {
+            insert.bind(stmt, cardData);
 
-        int index = 1;
-        for (Object value : cardData.values()) {
-            stmt.setObject(index++, value);
-        }
+            int affectedRows = stmt.executeUpdate();
+            if (affectedRows == 0)
+                throw new Exception("Creating card failed, no rows affected.");
 
-        int affectedRows = stmt.executeUpdate();
-        if (affectedRows == 0)
-            throw new Exception("Creating card failed, no rows affected.");
-
-        try (var generatedKeys = stmt.getGeneratedKeys()) {
-            if (generatedKeys.next()) {
-                return generatedKeys.getInt(1);
-            } else
-                throw new Exception("Creating card failed, no ID obtained.");
+            try (var generatedKeys = stmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    return generatedKeys.getInt(1);
+                } else
+                    throw new Exception("Creating card failed, no ID obtained.");
+            }
         }
     }
 
@@ -144,21 +154,14 @@ public class CardRepository extends RepositoryBase implements RepositoryContract
         Map<String, Object> subCardData = new HashMap<>(offerData);
         subCardData.put("card_id", cardId);
         CardType ct = CardType.valueOf(cardData.get("card_type").toString());
-        var conn = connection.getConnection();
-
-        String fields = fieldsOf(subCardData);
-        String bindingTemplate = bindingTemplateOf(subCardData);
-        String tableName = getTableNameByType(ct);
+        SqlTemplate insert = insertTemplate(getTableNameByType(ct), subCardData.keySet());
 
-        var stmt = conn.prepareStatement("INSERT INTO " + tableName + " " + fields + " VALUES " + bindingTemplate);
-
-        int index = 1;
-        for (Object value : subCardData.values()) {
-            stmt.setObject(index++, value);
+        try (var conn = connectionOf(connection);
+                var stmt = conn.prepareStatement(insert.sql())) {
+            insert.bind(stmt, subCardData);
+            stmt.executeUpdate();
         }
 
-        stmt.executeUpdate();
-
         // Combine data for hydration
         Map<String, Object> mergedData = new HashMap<>(cardData);
         mergedData.putAll(subCardData);
@@ -170,12 +173,8 @@ public class CardRepository extends RepositoryBase implements RepositoryContract
     /**
      * Create a card instance of the appropriate type
      */
-    private Card createCardInstance(CardType cardType, Map<String, Object> data) throws Exception {
-        return switch (cardType) {
-            case PREPAID -> Hydrator.mapRow(data, PrepaidCard.class);
-            case DEBIT -> Hydrator.mapRow(data, DebitCard.class);
-            case CREDIT -> Hydrator.mapRow(data, CreditCard.class);
-        };
+    private Card createCardInstance(CardType cardType, Map<String, Object> data) {
+        return getMapperByType(cardType).fromData(data);
     }
 
     private Map<String, Object> getOffer(Map<String, Object> data) throws Exception {
@@ -189,6 +188,14 @@ public class CardRepository extends RepositoryBase implements RepositoryContract
         };
     }
 
+    static EntityMapper<? extends Card> getMapperByType(CardType ct) {
+        return switch (ct) {
+            case PREPAID -> PrepaidCardMapper.INSTANCE;
+            case DEBIT -> DebitCardMapper.INSTANCE;
+            case CREDIT -> CreditCardMapper.INSTANCE;
+        };
+    }
+
     private String getTableNameByType(CardType ct) {
         return switch (ct) {
             case PREPAID -> PrepaidCard.TABLE_NAME;
@@ -216,24 +223,26 @@ public class CardRepository extends RepositoryBase implements RepositoryContract
             Map<String, Object> baseCardFields = fieldMaps.get("base");
             Map<String, Object> subtypeFields = fieldMaps.get("subtype");
 
-            var conn = connection.getConnection();
-
-            // Update base card fields if any
-            updateBaseCardFields(conn, entity.getId(), baseCardFields);
-
-            // Update subtype-specific fields if any
-            updateSubtypeFields(conn, entity.getId(), cardType, subtypeFields);
-
-            // Handle special offer update if needed
-            if (offer != -1) {
-                updateCardOffer(conn, entity, offer);
-            }
-
-            // Return updated entity
-            Map<String, Object> mergedData = new HashMap<>(baseCardFields);
-            mergedData.putAll(subtypeFields);
-            mergedData.put("id", entity.getId());
-            return Hydrator.mapRow(mergedData, entity.getClass());
+            return transactionally(connection, () -> {
+                try (var conn = connectionOf(connection)) {
+                    // Update base card fields if any
+                    updateBaseCardFields(conn, entity.getId(), baseCardFields);
+
+                    // Update subtype-specific fields if any
+                    updateSubtypeFields(conn, entity.getId(), cardType, subtypeFields);
+
+                    // Handle special offer update if needed
+                    if (offer != -1) {
+                        updateCardOffer(conn, entity, offer);
+                    }
+
+                    // Return updated entity
+                    Map<String, Object> mergedData = new HashMap<>(baseCardFields);
+                    mergedData.putAll(subtypeFields);
+                    mergedData.put("id", entity.getId());
+                    return createCardInstance(cardType, mergedData);
+                }
+            });
         });
     }
 
@@ -271,15 +280,8 @@ public class CardRepository extends RepositoryBase implements RepositoryContract
         if (fields.isEmpty())
             return;
 
-        String setClause = setClauseOf(fields);
-        var stmt = conn.prepareStatement("UPDATE " + TABLE_NAME + " SET " + setClause + " WHERE id = ?");
-
-        int index = 1;
-        for (Object value : fields.values()) {
-            stmt.setObject(index++, value);
-        }
-        stmt.setObject(index, cardId);
-        stmt.executeUpdate();
+        SqlTemplate update = updateTemplate(TABLE_NAME, fields.keySet(), "id");
+        executeUpdate(conn, update.sql(), update.params(fields, cardId));
     }
 
     /**
@@ -290,18 +292,8 @@ public class CardRepository extends RepositoryBase implements RepositoryContract
         if (fields.isEmpty())
             return;
 
-        String subtableSetClause = setClauseOf(fields);
-        var subtypeStmt = conn.prepareStatement(
-                "UPDATE " + getTableNameByType(cardType) +
-                        " SET " + subtableSetClause +
-                        " WHERE card_id = ?");
-
-        int subtypeIndex = 1;
-        for (Object value : fields.values()) {
-            subtypeStmt.setObject(subtypeIndex++, value);
-        }
-        subtypeStmt.setObject(subtypeIndex, cardId);
-        subtypeStmt.executeUpdate();
+        SqlTemplate update = updateTemplate(getTableNameByType(cardType), fields.keySet(), "card_id");
+        executeUpdate(conn, update.sql(), update.params(fields, cardId));
     }
 
     /**
@@ -312,18 +304,9 @@ public class CardRepository extends RepositoryBase implements RepositoryContract
                 "card_type", entity.getCardType().toString(),
                 "offer", offerId));
 
-        String offerSetClause = setClauseOf(offerData);
-        var offerStmt = conn.prepareStatement(
-                "UPDATE " + getTableNameByType(entity.getCardTypeEnum()) +
-                        " SET " + offerSetClause +
-                        " WHERE card_id = ?");
-
-        int offerIndex = 1;
-        for (Object value : offerData.values()) {
-            offerStmt.setObject(offerIndex++, value);
-        }
-        offerStmt.setObject(offerIndex, entity.getId());
-        offerStmt.executeUpdate();
+        SqlTemplate update = updateTemplate(getTableNameByType(entity.getCardTypeEnum()), offerData.keySet(),
+                "card_id");
+        executeUpdate(conn, update.sql(), update.params(offerData, entity.getId()));
     }
 
     // Helper method to get field names for specific card subtypes
@@ -350,37 +333,55 @@ public class CardRepository extends RepositoryBase implements RepositoryContract
         return fieldNames;
     }
 
+    /**
+     * Atomically take an amount off a prepaid card's balance. The balance is
+     * only touched when it covers the whole amount, so concurrent debits
+     * cannot overdraw the card.
+     *
+     * @param cardId ID of the prepaid card
+     * @param amount amount to debit
+     * @return true if the debit was applied, false if the balance was too low
+     */
     @Override
-    public void deleteById(String id) {
-        executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * FROM " + TABLE_NAME + " WHERE id = ?", id);
-
-            if (!rs.next()) {
-                throw new NoSuchElementException("No card with id " + id);
+    public boolean debitPrepaidBalance(int cardId, double amount) {
+        return executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                return executeUpdateCount(conn, "UPDATE " + PrepaidCard.TABLE_NAME
+                        + " SET available_balance = available_balance - ?"
+                        + " WHERE card_id = ? AND available_balance >= ?", amount, cardId, amount) == 1;
             }
-
-            // Delete from subtype table first
-            CardType ct = CardType.valueOf(rs.getString("card_type"));
-            String subtypeTable = getTableNameByType(ct);
-
-            executeUpdate(conn, "DELETE FROM " + subtypeTable + " WHERE card_id = ?", id);
-
-            // Then delete from base table
-            executeUpdate(conn, "DELETE FROM " + TABLE_NAME + " WHERE id = ?", id);
         });
     }
 
+    @Override
+    public void deleteById(String id) {
+        executeSafely(() -> transactionally(connection, () -> {
+            try (var conn = connectionOf(connection)) {
+                CardType ct = executeQuery(conn, "SELECT card_type FROM " + TABLE_NAME + " WHERE id = ?", rs -> {
+                    if (!rs.next()) {
+                        throw new NoSuchElementException("No card with id " + id);
+                    }
+                    return CardType.valueOf(rs.getString("card_type"));
+                }, id);
+
+                // Delete from subtype table first
+                String subtypeTable = getTableNameByType(ct);
+
+                executeUpdate(conn, "DELETE FROM " + subtypeTable + " WHERE card_id = ?", id);
+
+                // Then delete from base table
+                executeUpdate(conn, "DELETE FROM " + TABLE_NAME + " WHERE id = ?", id);
+            }
+            return null;
+        }));
+    }
+
+    @Override
     public List<Card> findAllByUserId(String userId) {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * from " + TABLE_NAME + " WHERE user_id = ?", userId);
-            List<Card> cards = new ArrayList<>();
-
-            while (rs.next()) {
-                cards.add(createCardFromResultSet(conn, rs));
+            try (var conn = connectionOf(connection)) {
+                return readCards(conn, SELECT_WITH_SUBTYPES + " WHERE c.user_id = ?", userId);
             }
-            return cards;
         });
     }
 }
@@ -0,0 +1,34 @@
+package repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import entities.Card;
+
+public interface CardRepositoryContract extends RepositoryContract<Card> {
+    /**
+     * Load several cards at once
+     *
+     * @param ids card ids to load, unknown ids are ignored
+     * @return the matching cards
+     */
+    List<Card> findByIds(Collection<Integer> ids);
+
+    /**
+     * All cards owned by a user
+     *
+     * @param userId ID of the user
+     * @return the user's cards
+     */
+    List<Card> findAllByUserId(String userId);
+
+    /**
+     * Atomically take an amount off a prepaid card's balance, only if the
+     * balance covers the whole amount.
+     *
+     * @param cardId ID of the prepaid card
+     * @param amount amount to debit
+     * @return true if the debit was applied, false if the balance was too low
+     */
+    boolean debitPrepaidBalance(int cardId, double amount);
+}
@@ -0,0 +1,75 @@
+package repositories;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import utils.EntityMapper;
+import utils.RowMapper;
+
+/**
+ * Column layout of one query: label to index resolution, plus the row
+ * mappers already bound to that layout. Built once per SQL string and shared
+ * by every execution of it.
+ */
+final class ColumnIndex {
+    private final List<String> labels;
+    private final Map<String, Integer> indexes;
+    private final Map<EntityMapper<?>, RowMapper<?>> mappers = new ConcurrentHashMap<>();
+
+    private ColumnIndex(List<String> labels) {
+        this.labels = Collections.unmodifiableList(labels);
+        this.indexes = new HashMap<>();
+        for (int i = 0; i < labels.size(); i++) {
+            indexes.putIfAbsent(labels.get(i), i + 1);
+        }
+    }
+
+    static ColumnIndex of(ResultSetMetaData meta) throws SQLException {
+        List<String> labels = new ArrayList<>(meta.getColumnCount());
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            labels.add(meta.getColumnLabel(i).toLowerCase(Locale.ROOT));
+        }
+        return new ColumnIndex(labels);
+    }
+
+    int size() {
+        return labels.size();
+    }
+
+    /**
+     * 1-based position of a column, labels are matched case-insensitively
+     */
+    int indexOf(String label) throws SQLException {
+        Integer index = indexes.get(label);
+        if (index == null)
+            index = indexes.get(label.toLowerCase(Locale.ROOT));
+        if (index == null)
+            throw new SQLException("No column labelled " + label + " in " + labels);
+        return index;
+    }
+
+    /**
+     * Row mapper for this layout: the entity's columns are looked up once and
+     * the generated mapper reads them by position
+     */
+    @SuppressWarnings("unchecked")
+    <T> RowMapper<T> mapperFor(EntityMapper<T> entityMapper) {
+        return (RowMapper<T>) mappers.computeIfAbsent(entityMapper, this::bind);
+    }
+
+    private <T> RowMapper<T> bind(EntityMapper<T> entityMapper) {
+        List<String> columns = entityMapper.columns();
+        int[] positions = new int[columns.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = indexes.getOrDefault(columns.get(i), 0);
+        }
+        return rs -> entityMapper.read(rs, positions);
+    }
+}
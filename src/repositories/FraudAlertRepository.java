@@ -1,16 +1,17 @@
 package repositories;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import entities.FraudAlert;
+import entities.FraudAlertMapper;
 import enums.AlertLevel;
 import services.DBConnection;
-import utils.Hydrator;
 
-public class FraudAlertRepository extends RepositoryBase implements RepositoryContract<FraudAlert> {
+public class FraudAlertRepository extends RepositoryBase implements FraudAlertRepositoryContract {
     public static final String TABLE_NAME = "fraud_alerts";
     private final DBConnection connection;
 
@@ -21,13 +22,9 @@ public class FraudAlertRepository extends RepositoryBase implements RepositoryCo
     @Override
     public List<FraudAlert> findAll() {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * FROM " + TABLE_NAME);
-            ArrayList<FraudAlert> alerts = new ArrayList<>();
-            while (rs.next()) {
-                alerts.add(Hydrator.mapRow(Hydrator.resultSetToMap(rs), FraudAlert.class));
+            try (var conn = connectionOf(connection)) {
+                return queryList(conn, "SELECT * FROM " + TABLE_NAME, FraudAlertMapper.INSTANCE);
             }
-            return alerts;
         });
     }
 
@@ -35,27 +32,23 @@ public class FraudAlertRepository extends RepositoryBase implements RepositoryCo
     public FraudAlert create(Map<String, Object> data) {
         return executeSafely(() -> {
             Map<String, Object> filteredData = filterID(data);
-            List<Object> params = new ArrayList<>();
-            for (String col : filteredData.keySet()) {
-                params.add(filteredData.get(col));
-            }
 
-            var conn = connection.getConnection();
-            int insertedId = executeUpdate(conn, "INSERT INTO " + TABLE_NAME + " " + fieldsOf(filteredData) + " VALUES "
-                    + bindingTemplateOf(filteredData), filteredData.values().toArray());
-            filteredData.put("id", insertedId);
-            return Hydrator.mapRow(filteredData, FraudAlert.class);
+            try (var conn = connectionOf(connection)) {
+                int insertedId = insert(conn, TABLE_NAME, FraudAlertMapper.INSTANCE,
+                        FraudAlertMapper.INSTANCE.fromData(filteredData));
+                filteredData.put("id", insertedId);
+                return FraudAlertMapper.INSTANCE.fromData(filteredData);
+            }
         });
     }
 
     @Override
     public Optional<FraudAlert> findById(String id) {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * FROM " + TABLE_NAME + " WHERE id = ? LIMIT 1", id);
-            if (rs.next())
-                return Optional.of(Hydrator.mapRow(Hydrator.resultSetToMap(rs), FraudAlert.class));
-            return Optional.empty();
+            try (var conn = connectionOf(connection)) {
+                return queryFirst(conn, "SELECT * FROM " + TABLE_NAME + " WHERE id = ? LIMIT 1",
+                        FraudAlertMapper.INSTANCE, id);
+            }
         });
     }
 
@@ -64,45 +57,57 @@ public class FraudAlertRepository extends RepositoryBase implements RepositoryCo
         final FraudAlert[] alertRef = { alert };
         alertRef[0] = executeSafely(() -> {
             Map<String, Object> filteredData = filterID(fieldsToUpdate);
-            var conn = connection.getConnection();
-            executeUpdate(conn, "UPDATE " + TABLE_NAME + " SET " + setClauseOf(filteredData) + " WHERE id = ?",
-                    filteredData);
+            try (var conn = connectionOf(connection)) {
+                SqlTemplate update = updateTemplate(TABLE_NAME, filteredData.keySet(), "id");
+                executeUpdate(conn, update.sql(), update.params(filteredData, alert.id()));
 
-            filteredData.put("id", alert.id());
-            return Hydrator.mapRow(filteredData, FraudAlert.class);
+                filteredData.put("id", alert.id());
+                return FraudAlertMapper.INSTANCE.fromData(filteredData);
+            }
         });
     }
 
     @Override
     public void deleteById(String id) {
         executeSafely(() -> {
-            var conn = connection.getConnection();
-            executeUpdate(conn, "DELETE FROM " + TABLE_NAME + " WHERE id = ?", id);
+            try (var conn = connectionOf(connection)) {
+                executeUpdate(conn, "DELETE FROM " + TABLE_NAME + " WHERE id = ?", id);
+            }
         });
     }
 
+    @Override
     public List<FraudAlert> findByCardId(int cardId) {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * FROM " + TABLE_NAME + " WHERE card_id = ?", cardId);
-            ArrayList<FraudAlert> alerts = new ArrayList<>();
-            while (rs.next()) {
-                alerts.add(Hydrator.mapRow(Hydrator.resultSetToMap(rs), FraudAlert.class));
+            try (var conn = connectionOf(connection)) {
+                return queryList(conn, "SELECT * FROM " + TABLE_NAME + " WHERE card_id = ?",
+                        FraudAlertMapper.INSTANCE, cardId);
             }
-            return alerts;
         });
     }
 
+    @Override
     public List<FraudAlert> findByAlertLevelWhereCardId(AlertLevel level, int cardId) {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * FROM " + TABLE_NAME + " WHERE car_id = ? AND level = ?", cardId,
-                    level);
-            ArrayList<FraudAlert> alerts = new ArrayList<>();
-            while (rs.next()) {
-                alerts.add(Hydrator.mapRow(Hydrator.resultSetToMap(rs), FraudAlert.class));
+            try (var conn = connectionOf(connection)) {
+                return queryList(conn, "SELECT * FROM " + TABLE_NAME + " WHERE card_id = ? AND level = ?",
+                        FraudAlertMapper.INSTANCE, cardId, level);
+            }
+        });
+    }
+
+    @Override
+    public List<AlertStamp> findStampsSince(int cardId, LocalDateTime since) {
+        return executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                List<AlertStamp> stamps = new ArrayList<>();
+                forEachRow(conn, "SELECT id, level, created_at FROM " + TABLE_NAME
+                        + " WHERE card_id = ? AND created_at >= ? ORDER BY created_at",
+                        row -> stamps.add(new AlertStamp(row.getInt("id"), AlertLevel.valueOf(row.getString("level")),
+                                row.getLocalDateTime("created_at"))),
+                        cardId, since);
+                return stamps;
             }
-            return alerts;
         });
     }
 }
@@ -0,0 +1,42 @@
+package repositories;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import entities.FraudAlert;
+import enums.AlertLevel;
+
+public interface FraudAlertRepositoryContract extends RepositoryContract<FraudAlert> {
+    /**
+     * Every alert raised on a card
+     *
+     * @param cardId ID of the card
+     * @return the card's alerts
+     */
+    List<FraudAlert> findByCardId(int cardId);
+
+    /**
+     * Alerts of one level raised on a card
+     *
+     * @param level  alert level to match
+     * @param cardId ID of the card
+     * @return matching alerts
+     */
+    List<FraudAlert> findByAlertLevelWhereCardId(AlertLevel level, int cardId);
+
+    /**
+     * Id, level and creation time of the alerts raised on a card since a
+     * point in time, without loading their descriptions
+     *
+     * @param cardId ID of the card
+     * @param since  inclusive lower bound on the creation time
+     * @return matching alerts, oldest first
+     */
+    List<AlertStamp> findStampsSince(int cardId, LocalDateTime since);
+
+    /**
+     * When an alert of a given level was raised
+     */
+    record AlertStamp(int id, AlertLevel level, LocalDateTime createdAt) {
+    }
+}
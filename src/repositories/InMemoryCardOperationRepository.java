@@ -0,0 +1,256 @@
+package repositories;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import entities.Card;
+import entities.CardOperation;
+import entities.CardOperationMapper;
+
+/**
+ * Card operations kept in memory, with a per-card index ordered by date so
+ * time-window queries only walk the operations inside the window.
+ */
+public class InMemoryCardOperationRepository extends RepositoryBase implements CardOperationRepositoryContract {
+    private static final Comparator<CardOperation> BY_DATE = Comparator.comparing(CardOperation::date)
+            .thenComparing(CardOperation::id);
+    // Sort before / after every real operation sharing the same date
+    private static final UUID LOWEST_ID = new UUID(Long.MIN_VALUE, Long.MIN_VALUE);
+    private static final UUID HIGHEST_ID = new UUID(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final Map<UUID, CardOperation> operations = new ConcurrentHashMap<>();
+    private final Map<Integer, NavigableSet<CardOperation>> byCard = new ConcurrentHashMap<>();
+    private final CardRepositoryContract cardRepository;
+    private final InMemorySpendCounterRepository spendCounterRepository;
+
+    public InMemoryCardOperationRepository(CardRepositoryContract cardRepository,
+            InMemorySpendCounterRepository spendCounterRepository) {
+        this.cardRepository = cardRepository;
+        this.spendCounterRepository = spendCounterRepository;
+    }
+
+    @Override
+    public Optional<CardOperation> findById(String id) {
+        return Optional.ofNullable(operations.get(UUID.fromString(id)));
+    }
+
+    @Override
+    public List<CardOperation> findAll() {
+        return new ArrayList<>(operations.values());
+    }
+
+    /**
+     * Store an operation and bump its spend counters
+     */
+    @Override
+    public CardOperation create(Map<String, Object> data) {
+        return executeSafely(() -> {
+            CardOperation operation = CardOperationMapper.INSTANCE.fromData(data);
+
+            if (operations.putIfAbsent(operation.id(), operation) != null)
+                throw new Exception("Failed to create Card Operation, duplicate id " + operation.id());
+            index(operation);
+            spendCounterRepository.adjust(operation.cardId(), operation.date(), operation.amount(), 1);
+            return operation;
+        });
+    }
+
+    @Override
+    public void deleteById(String id) {
+        CardOperation removed = operations.remove(UUID.fromString(id));
+        if (removed != null) {
+            unindex(removed);
+            spendCounterRepository.adjust(removed.cardId(), removed.date(), -removed.amount(), -1);
+        }
+    }
+
+    @Override
+    public void update(CardOperation co, Map<String, Object> data) {
+        executeSafely(() -> {
+            CardOperation current = operations.get(co.id());
+            if (current == null)
+                return;
+
+            Map<String, Object> mergedData = toData(current);
+            mergedData.putAll(filterID(data));
+            CardOperation updated = CardOperationMapper.INSTANCE.fromData(mergedData);
+
+            if (operations.replace(current.id(), current, updated)) {
+                unindex(current);
+                index(updated);
+                spendCounterRepository.adjust(current.cardId(), current.date(), -current.amount(), -1);
+                spendCounterRepository.adjust(updated.cardId(), updated.date(), updated.amount(), 1);
+            }
+        });
+    }
+
+    @Override
+    public List<CardOperation> findCardOperationsOf(String cardId) {
+        return new ArrayList<>(operationsOf(cardId));
+    }
+
+    @Override
+    public Stream<CardOperation> streamCardOperationsOf(String cardId) {
+        return operationsOf(cardId).descendingSet().stream();
+    }
+
+    @Override
+    public Stream<CardOperation> streamAll() {
+        return operations.values().stream();
+    }
+
+    @Override
+    public List<CardOperation> find(OperationQuery query) {
+        try (Stream<CardOperation> matches = stream(query)) {
+            return matches.toList();
+        }
+    }
+
+    @Override
+    public Stream<CardOperation> stream(OperationQuery query) {
+        Stream<CardOperation> matches = merge(query);
+        return query.limit() > 0 ? matches.limit(query.limit()) : matches;
+    }
+
+    @Override
+    public Page<CardOperation> findPage(OperationQuery query, int pageSize) {
+        List<CardOperation> rows = merge(query).limit(pageSize + 1L).toList();
+        return Page.of(rows, pageSize, op -> new PageCursor(op.date(), op.id()));
+    }
+
+    @Override
+    public List<CardOperation> findCardOperationsOfSince(String cardId, LocalDateTime from) {
+        return new ArrayList<>(since(cardId, from));
+    }
+
+    @Override
+    public List<CardOperation> findCardOperationsBetween(String cardId, LocalDateTime from, LocalDateTime to) {
+        return new ArrayList<>(operationsOf(cardId).subSet(lowest(from), true, highest(to), true));
+    }
+
+    @Override
+    public double sumAmountSince(String cardId, LocalDateTime from) {
+        double sum = 0.0;
+        for (CardOperation operation : since(cardId, from)) {
+            sum += operation.amount();
+        }
+        return sum;
+    }
+
+    private NavigableSet<CardOperation> operationsOf(String cardId) {
+        NavigableSet<CardOperation> cardOperations = byCard.get(Integer.parseInt(cardId));
+        return cardOperations != null ? cardOperations : new ConcurrentSkipListSet<>(BY_DATE);
+    }
+
+    /**
+     * Lazily merge the date indexes of every card the query can touch, in the
+     * query's order, so a limited read stops after the rows it returns
+     */
+    private Stream<CardOperation> merge(OperationQuery query) {
+        Comparator<CardOperation> order = query.newestFirst() ? BY_DATE.reversed() : BY_DATE;
+        PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparing(Head::operation, order));
+        for (int cardId : cardsOf(query)) {
+            Iterator<CardOperation> rest = slice(cardId, query).stream().filter(query::matches).iterator();
+            if (rest.hasNext())
+                heads.add(new Head(rest.next(), rest));
+        }
+
+        Iterator<CardOperation> merged = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public CardOperation next() {
+                Head head = heads.remove();
+                if (head.rest().hasNext())
+                    heads.add(new Head(head.rest().next(), head.rest()));
+                return head.operation();
+            }
+        };
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private Collection<Integer> cardsOf(OperationQuery query) {
+        if (query.userId() == null)
+            return query.cardId() != null ? List.of(query.cardId()) : byCard.keySet();
+
+        List<Integer> userCards = new ArrayList<>();
+        for (Card card : cardRepository.findAllByUserId(String.valueOf(query.userId()))) {
+            if (query.cardId() == null || query.cardId() == card.getId())
+                userCards.add(card.getId());
+        }
+        return userCards;
+    }
+
+    // A card's operations within the query's date bounds, in its order, after its cursor
+    private NavigableSet<CardOperation> slice(int cardId, OperationQuery query) {
+        NavigableSet<CardOperation> cardOperations = operationsOf(String.valueOf(cardId));
+        if (query.from() != null)
+            cardOperations = cardOperations.tailSet(lowest(query.from()), true);
+        if (query.to() != null)
+            cardOperations = cardOperations.headSet(highest(query.to()), true);
+        if (query.newestFirst())
+            cardOperations = cardOperations.descendingSet();
+
+        PageCursor after = query.after();
+        if (after != null)
+            cardOperations = cardOperations.tailSet(new CardOperation(after.id(), after.date(), 0, null, null, 0),
+                    false);
+        return cardOperations;
+    }
+
+    private NavigableSet<CardOperation> since(String cardId, LocalDateTime from) {
+        return operationsOf(cardId).tailSet(lowest(from), true);
+    }
+
+    private void index(CardOperation operation) {
+        byCard.computeIfAbsent(operation.cardId(), k -> new ConcurrentSkipListSet<>(BY_DATE)).add(operation);
+    }
+
+    private void unindex(CardOperation operation) {
+        NavigableSet<CardOperation> cardOperations = byCard.get(operation.cardId());
+        if (cardOperations != null)
+            cardOperations.remove(operation);
+    }
+
+    private static CardOperation lowest(LocalDateTime date) {
+        return new CardOperation(LOWEST_ID, date, 0, null, null, 0);
+    }
+
+    private static CardOperation highest(LocalDateTime date) {
+        return new CardOperation(HIGHEST_ID, date, 0, null, null, 0);
+    }
+
+    private record Head(CardOperation operation, Iterator<CardOperation> rest) {
+    }
+
+    private static Map<String, Object> toData(CardOperation operation) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", operation.id());
+        data.put("date", operation.date());
+        data.put("amount", operation.amount());
+        data.put("type", operation.type());
+        data.put("location", operation.location());
+        data.put("card_id", operation.cardId());
+        return data;
+    }
+}
@@ -0,0 +1,195 @@
+package repositories;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import entities.Card;
+import entities.CreditCard;
+import entities.DebitCard;
+import entities.PrepaidCard;
+import enums.CardType;
+import utils.CaseConverter;
+import utils.Hydrator;
+
+/**
+ * Cards kept in memory. Card entities are mutable, so the store only ever
+ * hands out copies; every write replaces the stored card atomically.
+ */
+public class InMemoryCardRepository extends RepositoryBase implements CardRepositoryContract {
+    private final Map<Integer, Card> cards = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> byUser = new ConcurrentHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+
+    @Override
+    public Optional<Card> findById(String id) {
+        return Optional.ofNullable(copyOf(cards.get(Integer.parseInt(id))));
+    }
+
+    @Override
+    public List<Card> findAll() {
+        List<Card> result = new ArrayList<>();
+        for (Card card : cards.values()) {
+            result.add(copyOf(card));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Card> findByIds(Collection<Integer> ids) {
+        List<Card> result = new ArrayList<>();
+        if (ids == null)
+            return result;
+
+        for (int id : ids) {
+            Card card = cards.get(id);
+            if (card != null)
+                result.add(copyOf(card));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Card> findAllByUserId(String userId) {
+        return findByIds(byUser.getOrDefault(Integer.parseInt(userId), Set.of()));
+    }
+
+    @Override
+    public Card create(Map<String, Object> data) {
+        return executeSafely(() -> {
+            Map<String, Object> filteredData = filterID(data);
+
+            if (!filteredData.containsKey("card_type"))
+                throw new Exception("No card type provided");
+
+            CardType ct = CardType.valueOf(filteredData.get("card_type").toString());
+            int offerId = (int) filteredData.remove("offer");
+            filteredData.putAll(offerOf(ct, offerId));
+            filteredData.put("id", ids.incrementAndGet());
+
+            Card card = CardRepository.getMapperByType(ct).fromData(filteredData);
+            if (filteredData.get("card_number") != null)
+                card.setCardNumber(UUID.fromString(filteredData.get("card_number").toString()));
+
+            cards.put(card.getId(), card);
+            byUser.computeIfAbsent(card.getUserId(), k -> ConcurrentHashMap.newKeySet()).add(card.getId());
+            return copyOf(card);
+        });
+    }
+
+    @Override
+    public void update(Card entity, Map<String, Object> data) {
+        if (data.isEmpty())
+            return;
+
+        executeSafely(() -> {
+            cards.computeIfPresent(entity.getId(), (id, current) -> {
+                Card updated = copyOf(current);
+                for (Map.Entry<String, Object> entry : data.entrySet()) {
+                    apply(updated, CaseConverter.camelToSnake(entry.getKey()), entry.getValue());
+                }
+                return updated;
+            });
+        });
+    }
+
+    @Override
+    public boolean debitPrepaidBalance(int cardId, double amount) {
+        boolean[] debited = { false };
+        cards.computeIfPresent(cardId, (id, current) -> {
+            if (current instanceof PrepaidCard prepaid && prepaid.getAvailableBalance() >= amount) {
+                PrepaidCard updated = (PrepaidCard) copyOf(prepaid);
+                updated.setAvailableBalance(prepaid.getAvailableBalance() - amount);
+                debited[0] = true;
+                return updated;
+            }
+            return current;
+        });
+        return debited[0];
+    }
+
+    @Override
+    public void deleteById(String id) {
+        Card removed = cards.remove(Integer.parseInt(id));
+        if (removed == null)
+            throw new RuntimeException(new NoSuchElementException("No card with id " + id));
+
+        Set<Integer> userCards = byUser.get(removed.getUserId());
+        if (userCards != null)
+            userCards.remove(removed.getId());
+    }
+
+    /**
+     * Apply one field update, in the same vocabulary as the JDBC repository
+     */
+    private void apply(Card card, String field, Object value) {
+        switch (field) {
+            case "status" -> card.setStatus(value.toString());
+            case "expiration_date" -> card.setExpirationDate(value.toString());
+            case "offer" -> {
+                int offerId = Integer.parseInt(value.toString());
+                if (offerId == -1)
+                    return;
+                Map<String, Object> offer = executeSafely(() -> offerOf(card.getCardTypeEnum(), offerId));
+                offer.forEach((key, offerValue) -> apply(card, key, offerValue));
+            }
+            case "monthly_limit" -> {
+                if (card instanceof CreditCard credit)
+                    credit.setMonthlyLimit(toDouble(value));
+            }
+            case "interest_rate" -> {
+                if (card instanceof CreditCard credit)
+                    credit.setInterestRate(toDouble(value));
+            }
+            case "daily_limit" -> {
+                if (card instanceof DebitCard debit)
+                    debit.setDailyLimit(toDouble(value));
+            }
+            case "available_balance" -> {
+                if (card instanceof PrepaidCard prepaid)
+                    prepaid.setAvailableBalance(toDouble(value));
+            }
+            default -> {
+                // id, card_type and user_id are not updatable
+            }
+        }
+    }
+
+    private static double toDouble(Object value) {
+        return (double) Hydrator.castValueToType(value, double.class);
+    }
+
+    private static Map<String, Object> offerOf(CardType ct, int offerId) throws Exception {
+        return switch (ct) {
+            case PREPAID -> PrepaidCard.getOffer(offerId);
+            case CREDIT -> CreditCard.getOffer(offerId);
+            case DEBIT -> DebitCard.getOffer(offerId);
+        };
+    }
+
+    /**
+     * Detached copy of a card, so a stored card is never shared with callers
+     */
+    static Card copyOf(Card card) {
+        if (card == null)
+            return null;
+
+        Card copy = switch (card) {
+            case CreditCard c -> new CreditCard(c.getId(), c.getExpirationDate(), c.getStatus(), c.getUserId(),
+                    c.getMonthlyLimit(), c.getInterestRate());
+            case DebitCard c -> new DebitCard(c.getId(), c.getExpirationDate(), c.getStatus(), c.getUserId(),
+                    c.getDailyLimit());
+            case PrepaidCard c -> new PrepaidCard(c.getId(), c.getExpirationDate(), c.getStatus(), c.getUserId(),
+                    c.getAvailableBalance());
+        };
+        copy.setCardNumber(card.getCardNumber());
+        return copy;
+    }
+}
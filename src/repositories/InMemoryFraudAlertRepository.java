@@ -0,0 +1,124 @@
+package repositories;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import entities.FraudAlert;
+import entities.FraudAlertMapper;
+import enums.AlertLevel;
+
+public class InMemoryFraudAlertRepository extends RepositoryBase implements FraudAlertRepositoryContract {
+    private final Map<Integer, FraudAlert> alerts = new ConcurrentHashMap<>();
+    // card id -> alert ids, oldest first
+    private final Map<Integer, Set<Integer>> byCard = new ConcurrentHashMap<>();
+    // alert id -> creation time, the created_at column of the JDBC table
+    private final Map<Integer, LocalDateTime> createdAt = new ConcurrentHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+
+    @Override
+    public List<FraudAlert> findAll() {
+        return new ArrayList<>(alerts.values());
+    }
+
+    @Override
+    public FraudAlert create(Map<String, Object> data) {
+        return executeSafely(() -> {
+            Map<String, Object> filteredData = filterID(data);
+            filteredData.put("id", ids.incrementAndGet());
+            FraudAlert alert = FraudAlertMapper.INSTANCE.fromData(filteredData);
+
+            createdAt.put(alert.id(), LocalDateTime.now());
+            alerts.put(alert.id(), alert);
+            byCard.computeIfAbsent(alert.cardId(), k -> new ConcurrentSkipListSet<>()).add(alert.id());
+            return alert;
+        });
+    }
+
+    @Override
+    public Optional<FraudAlert> findById(String id) {
+        return Optional.ofNullable(alerts.get(Integer.parseInt(id)));
+    }
+
+    @Override
+    public void update(FraudAlert alert, Map<String, Object> fieldsToUpdate) {
+        executeSafely(() -> {
+            FraudAlert current = alerts.get(alert.id());
+            if (current == null)
+                return;
+
+            Map<String, Object> mergedData = toData(current);
+            mergedData.putAll(filterID(fieldsToUpdate));
+            FraudAlert updated = FraudAlertMapper.INSTANCE.fromData(mergedData);
+
+            alerts.put(updated.id(), updated);
+            if (updated.cardId() != current.cardId()) {
+                unindex(current);
+                byCard.computeIfAbsent(updated.cardId(), k -> new ConcurrentSkipListSet<>()).add(updated.id());
+            }
+        });
+    }
+
+    @Override
+    public void deleteById(String id) {
+        FraudAlert removed = alerts.remove(Integer.parseInt(id));
+        if (removed != null) {
+            unindex(removed);
+            createdAt.remove(removed.id());
+        }
+    }
+
+    @Override
+    public List<FraudAlert> findByCardId(int cardId) {
+        List<FraudAlert> result = new ArrayList<>();
+        for (int id : byCard.getOrDefault(cardId, Set.of())) {
+            FraudAlert alert = alerts.get(id);
+            if (alert != null)
+                result.add(alert);
+        }
+        return result;
+    }
+
+    @Override
+    public List<FraudAlert> findByAlertLevelWhereCardId(AlertLevel level, int cardId) {
+        List<FraudAlert> result = new ArrayList<>();
+        for (FraudAlert alert : findByCardId(cardId)) {
+            if (alert.getLevelEnum() == level)
+                result.add(alert);
+        }
+        return result;
+    }
+
+    @Override
+    public List<AlertStamp> findStampsSince(int cardId, LocalDateTime since) {
+        List<AlertStamp> result = new ArrayList<>();
+        for (FraudAlert alert : findByCardId(cardId)) {
+            LocalDateTime created = createdAt.get(alert.id());
+            if (created != null && !created.isBefore(since))
+                result.add(new AlertStamp(alert.id(), alert.getLevelEnum(), created));
+        }
+        return result;
+    }
+
+    private void unindex(FraudAlert alert) {
+        Set<Integer> cardAlerts = byCard.get(alert.cardId());
+        if (cardAlerts != null)
+            cardAlerts.remove(alert.id());
+    }
+
+    private static Map<String, Object> toData(FraudAlert alert) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", alert.id());
+        data.put("description", alert.description());
+        data.put("level", alert.level());
+        data.put("card_id", alert.cardId());
+        return data;
+    }
+}
@@ -0,0 +1,76 @@
+package repositories;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import entities.LocationAlert;
+import entities.LocationAlertMapper;
+
+public class InMemoryLocationAlertRepository extends RepositoryBase implements LocationAlertRepositoryContract {
+    private final Map<Integer, LocationAlert> alerts = new ConcurrentHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+
+    @Override
+    public List<LocationAlert> findAll() {
+        return new ArrayList<>(alerts.values());
+    }
+
+    @Override
+    public LocationAlert create(Map<String, Object> data) {
+        return executeSafely(() -> {
+            Map<String, Object> filteredData = filterID(data);
+            filteredData.put("id", ids.incrementAndGet());
+            LocationAlert alert = LocationAlertMapper.INSTANCE.fromData(filteredData);
+            alerts.put(alert.id(), alert);
+            return alert;
+        });
+    }
+
+    @Override
+    public Optional<LocationAlert> findById(String id) {
+        return Optional.ofNullable(alerts.get(Integer.parseInt(id)));
+    }
+
+    @Override
+    public void update(LocationAlert alert, Map<String, Object> fieldsToUpdate) {
+        executeSafely(() -> {
+            LocationAlert current = alerts.get(alert.id());
+            if (current == null)
+                return;
+
+            Map<String, Object> mergedData = toData(current);
+            mergedData.putAll(filterID(fieldsToUpdate));
+            alerts.put(current.id(), LocationAlertMapper.INSTANCE.fromData(mergedData));
+        });
+    }
+
+    @Override
+    public void deleteById(String id) {
+        alerts.remove(Integer.parseInt(id));
+    }
+
+    @Override
+    public List<LocationAlert> findByLocationId(int locationId) {
+        List<LocationAlert> result = new ArrayList<>();
+        for (LocationAlert alert : alerts.values()) {
+            if (alert.locationId() == locationId)
+                result.add(alert);
+        }
+        return result;
+    }
+
+    private static Map<String, Object> toData(LocationAlert alert) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", alert.id());
+        data.put("location_id", alert.locationId());
+        data.put("description", alert.description());
+        data.put("distinct_cards", alert.distinctCards());
+        data.put("level", alert.level());
+        return data;
+    }
+}
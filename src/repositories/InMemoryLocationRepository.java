@@ -0,0 +1,26 @@
+package repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import entities.Location;
+
+public class InMemoryLocationRepository implements LocationRepositoryContract {
+    // normalized name -> location
+    private final Map<String, Location> locations = new ConcurrentHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+
+    @Override
+    public List<Location> findAll() {
+        return new ArrayList<>(locations.values());
+    }
+
+    @Override
+    public Location findOrCreate(String name, String normalizedName) {
+        return locations.computeIfAbsent(normalizedName,
+                key -> new Location(ids.incrementAndGet(), name, normalizedName));
+    }
+}
@@ -0,0 +1,48 @@
+package repositories;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import enums.SpendPeriod;
+
+/**
+ * Spend counters kept in memory. They are updated in the same call as every
+ * operation insert, update and delete, so there is nothing to reconcile.
+ */
+public class InMemorySpendCounterRepository implements SpendCounterRepositoryContract {
+    private final Map<BucketKey, Totals> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public double totalFor(int cardId, SpendPeriod period, LocalDateTime date) {
+        Totals totals = counters.get(new BucketKey(cardId, period, period.startOf(date)));
+        return totals == null ? 0.0 : totals.amount();
+    }
+
+    @Override
+    public List<Drift> reconcile() {
+        return List.of();
+    }
+
+    /**
+     * Add (or with a negative amount and count, remove) an operation from
+     * every bucket it belongs to
+     */
+    void adjust(int cardId, LocalDateTime date, double amount, int count) {
+        for (SpendPeriod period : SpendPeriod.values()) {
+            counters.merge(new BucketKey(cardId, period, period.startOf(date)), new Totals(amount, count),
+                    Totals::plus);
+        }
+    }
+
+    private record BucketKey(int cardId, SpendPeriod period, LocalDate periodStart) {
+    }
+
+    private record Totals(double amount, int count) {
+        Totals plus(Totals other) {
+            return new Totals(amount + other.amount, count + other.count);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package repositories;
+
+import utils.Callback;
+
+/**
+ * Unit of work for the in-memory repositories. Each repository call is atomic
+ * on its own and applied immediately; there is nothing to roll back, so an
+ * exception only stops the writes that had not happened yet.
+ */
+public class InMemoryUnitOfWork implements UnitOfWork {
+    @Override
+    public <R> R execute(Callback<R> work) throws Exception {
+        return work.run();
+    }
+
+    @Override
+    public void afterCommit(Runnable callback) {
+        callback.run();
+    }
+
+    @Override
+    public void afterCompletion(Runnable callback) {
+        callback.run();
+    }
+}
@@ -0,0 +1,86 @@
+package repositories;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import entities.User;
+import entities.UserMapper;
+
+public class InMemoryUserRepository extends RepositoryBase implements UserRepositoryContract {
+    private final Map<Integer, User> users = new ConcurrentHashMap<>();
+    // email -> user id, doubles as the unique constraint
+    private final Map<String, Integer> byEmail = new ConcurrentHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+
+    @Override
+    public Optional<User> findById(String id) {
+        return Optional.ofNullable(users.get(Integer.parseInt(id)));
+    }
+
+    @Override
+    public List<User> findAll() {
+        return new ArrayList<>(users.values());
+    }
+
+    @Override
+    public User create(Map<String, Object> data) {
+        return executeSafely(() -> {
+            Map<String, Object> filteredData = filterID(data);
+            int id = ids.incrementAndGet();
+            filteredData.put("id", id);
+            User user = UserMapper.INSTANCE.fromData(filteredData);
+
+            if (byEmail.putIfAbsent(user.email(), id) != null)
+                throw new Exception("Creating user failed, email already exists.");
+            users.put(id, user);
+            return user;
+        });
+    }
+
+    @Override
+    public void deleteById(String id) {
+        User removed = users.remove(Integer.parseInt(id));
+        if (removed != null)
+            byEmail.remove(removed.email(), removed.id());
+    }
+
+    @Override
+    public void update(User user, Map<String, Object> fieldsToUpdate) {
+        executeSafely(() -> {
+            User current = users.get(user.id());
+            if (current == null)
+                return;
+
+            Map<String, Object> mergedData = toData(current);
+            mergedData.putAll(filterID(fieldsToUpdate));
+            User updated = UserMapper.INSTANCE.fromData(mergedData);
+
+            if (!updated.email().equals(current.email())) {
+                if (byEmail.putIfAbsent(updated.email(), updated.id()) != null)
+                    throw new Exception("Updating user failed, email already exists.");
+                byEmail.remove(current.email(), current.id());
+            }
+            users.put(updated.id(), updated);
+        });
+    }
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        Integer id = byEmail.get(email);
+        return id == null ? Optional.empty() : Optional.ofNullable(users.get(id));
+    }
+
+    private static Map<String, Object> toData(User user) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", user.id());
+        data.put("name", user.name());
+        data.put("email", user.email());
+        data.put("phone_number", user.phoneNumber());
+        return data;
+    }
+}
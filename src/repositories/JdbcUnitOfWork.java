@@ -0,0 +1,113 @@
+package repositories;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import services.DBConnection;
+import utils.Callback;
+
+/**
+ * Unit of work bound to one pooled connection for the duration of the work.
+ */
+public class JdbcUnitOfWork implements UnitOfWork {
+    private static final ThreadLocal<Binding> CURRENT = new ThreadLocal<>();
+    private final DBConnection connection;
+
+    public JdbcUnitOfWork(DBConnection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public <R> R execute(Callback<R> work) throws Exception {
+        Binding outer = CURRENT.get();
+        if (outer != null && outer.owner() == connection) {
+            return work.run();
+        }
+
+        try (Connection conn = connection.getConnection()) {
+            conn.setAutoCommit(false);
+            Binding binding = new Binding(connection, enlisted(conn), new ArrayList<>(), new ArrayList<>());
+            CURRENT.set(binding);
+            boolean committed = false;
+            try {
+                R result = work.run();
+                conn.commit();
+                committed = true;
+                return result;
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                CURRENT.remove();
+                for (Runnable callback : binding.afterCompletion()) {
+                    callback.run();
+                }
+                if (committed) {
+                    for (Runnable callback : binding.afterCommit()) {
+                        callback.run();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void afterCommit(Runnable callback) {
+        Binding binding = CURRENT.get();
+        if (binding == null || binding.owner() != connection) {
+            callback.run();
+            return;
+        }
+        binding.afterCommit().add(callback);
+    }
+
+    @Override
+    public void afterCompletion(Runnable callback) {
+        Binding binding = CURRENT.get();
+        if (binding == null || binding.owner() != connection) {
+            callback.run();
+            return;
+        }
+        binding.afterCompletion().add(callback);
+    }
+
+    /**
+     * The connection of the unit running on this thread for the given pool,
+     * or null when no unit is active. Closing it is a no-op; the unit owns it.
+     */
+    static Connection current(DBConnection connection) {
+        Binding binding = CURRENT.get();
+        return binding != null && binding.owner() == connection ? binding.connection() : null;
+    }
+
+    private static Connection enlisted(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            return null;
+                        case "commit":
+                        case "rollback":
+                        case "setAutoCommit":
+                            throw new SQLException("Transaction is managed by the unit of work");
+                        default:
+                            break;
+                    }
+                    try {
+                        return method.invoke(conn, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private record Binding(DBConnection owner, Connection connection, List<Runnable> afterCompletion,
+            List<Runnable> afterCommit) {
+    }
+}
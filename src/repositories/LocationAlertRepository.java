@@ -0,0 +1,81 @@
+package repositories;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import entities.LocationAlert;
+import entities.LocationAlertMapper;
+import services.DBConnection;
+
+public class LocationAlertRepository extends RepositoryBase implements LocationAlertRepositoryContract {
+    public static final String TABLE_NAME = "location_alerts";
+    private final DBConnection connection;
+
+    public LocationAlertRepository(DBConnection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public List<LocationAlert> findAll() {
+        return executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                return queryList(conn, "SELECT * FROM " + TABLE_NAME, LocationAlertMapper.INSTANCE);
+            }
+        });
+    }
+
+    @Override
+    public LocationAlert create(Map<String, Object> data) {
+        return executeSafely(() -> {
+            Map<String, Object> filteredData = filterID(data);
+
+            try (var conn = connectionOf(connection)) {
+                int insertedId = insert(conn, TABLE_NAME, LocationAlertMapper.INSTANCE,
+                        LocationAlertMapper.INSTANCE.fromData(filteredData));
+                filteredData.put("id", insertedId);
+                return LocationAlertMapper.INSTANCE.fromData(filteredData);
+            }
+        });
+    }
+
+    @Override
+    public Optional<LocationAlert> findById(String id) {
+        return executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                return queryFirst(conn, "SELECT * FROM " + TABLE_NAME + " WHERE id = ? LIMIT 1",
+                        LocationAlertMapper.INSTANCE, id);
+            }
+        });
+    }
+
+    @Override
+    public void update(LocationAlert alert, Map<String, Object> fieldsToUpdate) {
+        executeSafely(() -> {
+            Map<String, Object> filteredData = filterID(fieldsToUpdate);
+            try (var conn = connectionOf(connection)) {
+                SqlTemplate update = updateTemplate(TABLE_NAME, filteredData.keySet(), "id");
+                executeUpdate(conn, update.sql(), update.params(filteredData, alert.id()));
+            }
+        });
+    }
+
+    @Override
+    public void deleteById(String id) {
+        executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                executeUpdate(conn, "DELETE FROM " + TABLE_NAME + " WHERE id = ?", id);
+            }
+        });
+    }
+
+    @Override
+    public List<LocationAlert> findByLocationId(int locationId) {
+        return executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                return queryList(conn, "SELECT * FROM " + TABLE_NAME + " WHERE location_id = ?",
+                        LocationAlertMapper.INSTANCE, locationId);
+            }
+        });
+    }
+}
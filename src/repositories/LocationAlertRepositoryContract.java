@@ -0,0 +1,15 @@
+package repositories;
+
+import java.util.List;
+
+import entities.LocationAlert;
+
+public interface LocationAlertRepositoryContract extends RepositoryContract<LocationAlert> {
+    /**
+     * Every alert raised on a location
+     *
+     * @param locationId dictionary ID of the location
+     * @return the location's alerts
+     */
+    List<LocationAlert> findByLocationId(int locationId);
+}
@@ -0,0 +1,41 @@
+package repositories;
+
+import java.util.List;
+
+import entities.Location;
+import entities.LocationMapper;
+import services.DBConnection;
+
+public class LocationRepository extends RepositoryBase implements LocationRepositoryContract {
+    public static final String TABLE_NAME = "locations";
+    private final DBConnection connection;
+
+    public LocationRepository(DBConnection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public List<Location> findAll() {
+        return executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                return queryList(conn, "SELECT * FROM " + TABLE_NAME, LocationMapper.INSTANCE);
+            }
+        });
+    }
+
+    @Override
+    public Location findOrCreate(String name, String normalizedName) {
+        return executeSafely(() -> {
+            // A connection of its own, outside any unit of work, so the row outlives a rollback
+            try (var conn = connection.getConnection()) {
+                // Another instance may add the same location first: keep its row
+                executeUpdateCount(conn,
+                        "INSERT IGNORE INTO " + TABLE_NAME + " (name, normalized_name) VALUES (?, ?)",
+                        name, normalizedName);
+                return queryFirst(conn, "SELECT * FROM " + TABLE_NAME + " WHERE normalized_name = ? LIMIT 1",
+                        LocationMapper.INSTANCE, normalizedName)
+                        .orElseThrow(() -> new Exception("Creating location failed: " + name));
+            }
+        });
+    }
+}
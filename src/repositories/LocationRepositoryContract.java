@@ -0,0 +1,26 @@
+package repositories;
+
+import java.util.List;
+
+import entities.Location;
+
+/**
+ * Distinct operation locations and their ids. Locations are only ever added.
+ */
+public interface LocationRepositoryContract {
+    /**
+     * @return every known location
+     */
+    List<Location> findAll();
+
+    /**
+     * The location stored under a normalized name, added if there is none.
+     * Additions are kept even if the caller's unit of work rolls back, so an
+     * id once handed out stays valid.
+     *
+     * @param name           spelling to store if the location is new
+     * @param normalizedName key of the location
+     * @return the stored location
+     */
+    Location findOrCreate(String name, String normalizedName);
+}
@@ -0,0 +1,146 @@
+package repositories;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.Set;
+
+import entities.CardOperation;
+import enums.OperationType;
+import utils.LocationNames;
+
+/**
+ * Immutable description of which card operations to read. Every {@code with}
+ * method returns a narrowed copy, so a base query can be shared and refined.
+ * Unset criteria (null, or an empty type set) do not filter.
+ *
+ * @param cardId    only operations of this card
+ * @param userId    only operations of this user's cards
+ * @param types     only operations of one of these types
+ * @param from      inclusive lower bound on the date
+ * @param to        inclusive upper bound on the date
+ * @param minAmount inclusive lower bound on the amount
+ * @param maxAmount inclusive upper bound on the amount
+ * @param location  only operations made at this location, however spelled
+ * @param order     date order of the results
+ * @param after     keyset cursor, only operations after it in {@code order}
+ * @param limit     maximum number of operations, 0 for no limit
+ */
+public record OperationQuery(
+        Integer cardId,
+        Integer userId,
+        Set<OperationType> types,
+        LocalDateTime from,
+        LocalDateTime to,
+        Double minAmount,
+        Double maxAmount,
+        String location,
+        Order order,
+        PageCursor after,
+        int limit) {
+
+    public enum Order {
+        NEWEST_FIRST,
+        OLDEST_FIRST
+    }
+
+    public OperationQuery {
+        types = types == null ? Set.of() : Set.copyOf(types);
+        order = order == null ? Order.NEWEST_FIRST : order;
+        if (limit < 0)
+            throw new IllegalArgumentException("Limit must not be negative");
+    }
+
+    public static OperationQuery all() {
+        return new OperationQuery(null, null, null, null, null, null, null, null, null, null, 0);
+    }
+
+    public static OperationQuery forCard(int cardId) {
+        return all().withCard(cardId);
+    }
+
+    public static OperationQuery forUser(int userId) {
+        return all().withUser(userId);
+    }
+
+    public OperationQuery withCard(Integer cardId) {
+        return new OperationQuery(cardId, userId, types, from, to, minAmount, maxAmount, location, order, after,
+                limit);
+    }
+
+    public OperationQuery withUser(Integer userId) {
+        return new OperationQuery(cardId, userId, types, from, to, minAmount, maxAmount, location, order, after,
+                limit);
+    }
+
+    public OperationQuery withTypes(OperationType first, OperationType... rest) {
+        return withTypes(EnumSet.of(first, rest));
+    }
+
+    public OperationQuery withTypes(Set<OperationType> types) {
+        return new OperationQuery(cardId, userId, types, from, to, minAmount, maxAmount, location, order, after,
+                limit);
+    }
+
+    public OperationQuery between(LocalDateTime from, LocalDateTime to) {
+        return new OperationQuery(cardId, userId, types, from, to, minAmount, maxAmount, location, order, after,
+                limit);
+    }
+
+    public OperationQuery withAmountBetween(Double minAmount, Double maxAmount) {
+        return new OperationQuery(cardId, userId, types, from, to, minAmount, maxAmount, location, order, after,
+                limit);
+    }
+
+    public OperationQuery withLocation(String location) {
+        return new OperationQuery(cardId, userId, types, from, to, minAmount, maxAmount, location, order, after,
+                limit);
+    }
+
+    public OperationQuery orderBy(Order order) {
+        return new OperationQuery(cardId, userId, types, from, to, minAmount, maxAmount, location, order, after,
+                limit);
+    }
+
+    public OperationQuery after(PageCursor after) {
+        return new OperationQuery(cardId, userId, types, from, to, minAmount, maxAmount, location, order, after,
+                limit);
+    }
+
+    public OperationQuery limit(int limit) {
+        return new OperationQuery(cardId, userId, types, from, to, minAmount, maxAmount, location, order, after,
+                limit);
+    }
+
+    public boolean newestFirst() {
+        return order == Order.NEWEST_FIRST;
+    }
+
+    /**
+     * Whether an operation passes every criterion except {@code userId}, which
+     * needs the card owner and is left to the caller
+     */
+    public boolean matches(CardOperation op) {
+        if (cardId != null && op.cardId() != cardId)
+            return false;
+        if (!types.isEmpty() && !types.contains(op.getTypeEnum()))
+            return false;
+        if (from != null && op.date().isBefore(from))
+            return false;
+        if (to != null && op.date().isAfter(to))
+            return false;
+        if (minAmount != null && op.amount() < minAmount)
+            return false;
+        if (maxAmount != null && op.amount() > maxAmount)
+            return false;
+        if (location != null && !LocationNames.sameName(location, op.location()))
+            return false;
+        return after == null || isAfterCursor(op);
+    }
+
+    private boolean isAfterCursor(CardOperation op) {
+        int cmp = op.date().compareTo(after.date());
+        if (cmp == 0)
+            cmp = op.id().compareTo(after.id());
+        return newestFirst() ? cmp < 0 : cmp > 0;
+    }
+}
@@ -0,0 +1,29 @@
+package repositories;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset-paginated query.
+ *
+ * @param items rows of this page, at most the requested page size
+ * @param next  cursor to pass back for the following page, null on the last
+ *              page
+ */
+public record Page<T>(List<T> items, PageCursor next) {
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    /**
+     * Cut a page out of up to {@code pageSize + 1} rows: the extra row only
+     * tells whether another page follows
+     */
+    static <T> Page<T> of(List<T> rows, int pageSize, Function<T, PageCursor> cursorOf) {
+        if (rows.size() <= pageSize)
+            return new Page<>(rows, null);
+
+        List<T> items = List.copyOf(rows.subList(0, pageSize));
+        return new Page<>(items, cursorOf.apply(items.get(pageSize - 1)));
+    }
+}
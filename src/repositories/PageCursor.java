@@ -0,0 +1,14 @@
+package repositories;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Position of the last row of a page in (date, id) order. The next page starts
+ * strictly after it, so rows inserted meanwhile never shift or repeat a page.
+ *
+ * @param date date of the last row returned
+ * @param id   id of the last row returned, breaks ties between equal dates
+ */
+public record PageCursor(LocalDateTime date, UUID id) {
+}
@@ -1,17 +1,37 @@
 package repositories;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import services.DBConnection;
 import utils.Callback;
+import utils.EntityMapper;
+import utils.InsertableMapper;
+import utils.ResultSetCallback;
 import utils.VoidCallback;
 
 public abstract class RepositoryBase {
+    // One interned SQL string per (kind, table, column list), shared by every repository
+    private static final Map<TemplateKey, SqlTemplate> TEMPLATES = new ConcurrentHashMap<>();
+    // Column layout of every SELECT run through forEachRow/queryList/queryFirst, by SQL string
+    private static final Map<String, ColumnIndex> COLUMNS = new ConcurrentHashMap<>();
 
     protected <R> R executeSafely(Callback<R> c) {
         try {
@@ -29,39 +49,220 @@ public abstract class RepositoryBase {
         }
     }
 
-    protected String fieldsOf(Map<String, Object> data) throws Exception {
-        if (data == null || data.isEmpty())
-            throw new Exception("No fields to continue");
+    /**
+     * Borrow a connection, or reuse the one of the unit of work running on
+     * this thread. Either way it is meant to be closed by the caller.
+     */
+    protected Connection connectionOf(DBConnection db) throws SQLException {
+        Connection enlisted = JdbcUnitOfWork.current(db);
+        return enlisted != null ? enlisted : db.getConnection();
+    }
 
-        return "(" + String.join(", ", data.keySet()) + ")";
+    /**
+     * Run several statements atomically, joining the current unit of work if
+     * there is one
+     */
+    protected <R> R transactionally(DBConnection db, Callback<R> work) throws Exception {
+        return new JdbcUnitOfWork(db).execute(work);
     }
 
-    protected String bindingTemplateOf(Map<String, Object> data) throws Exception {
-        if (data == null || data.isEmpty())
-            throw new Exception("No fields to continue");
-        return "(" + String.join(" ,", Collections.nCopies(data.size(), "?")) + ")";
+    /**
+     * INSERT INTO table (a, b, c) VALUES (?, ?, ?)
+     * <p>
+     * Columns are sorted so the same column set always yields the same SQL,
+     * whatever the iteration order of the caller's map.
+     */
+    protected SqlTemplate insertTemplate(String table, Collection<String> columns) throws Exception {
+        return template("INSERT", table, columns, null);
+    }
+
+    /**
+     * UPDATE table SET a = ?, b = ? WHERE key = ?
+     */
+    protected SqlTemplate updateTemplate(String table, Collection<String> columns, String keyColumn)
+            throws Exception {
+        return template("UPDATE", table, columns, keyColumn);
     }
 
-    protected String setClauseOf(Map<String, Object> data) throws Exception {
-        if (data == null || data.isEmpty())
+    private SqlTemplate template(String kind, String table, Collection<String> columns, String keyColumn)
+            throws Exception {
+        if (columns == null || columns.isEmpty())
             throw new Exception("No fields to continue");
-        return data.keySet().stream()
-                .map(field -> field + " = ?")
-                .collect(Collectors.joining(", "));
+
+        TemplateKey key = new TemplateKey(kind, table, List.copyOf(new TreeSet<>(columns)), keyColumn);
+        return TEMPLATES.computeIfAbsent(key, RepositoryBase::buildTemplate);
+    }
+
+    private static SqlTemplate buildTemplate(TemplateKey key) {
+        String sql = switch (key.kind()) {
+            case "INSERT" -> "INSERT INTO " + key.table() + " (" + String.join(", ", key.columns()) + ") VALUES ("
+                    + String.join(", ", Collections.nCopies(key.columns().size(), "?")) + ")";
+            case "UPDATE" -> "UPDATE " + key.table() + " SET " + String.join(" = ?, ", key.columns()) + " = ? WHERE "
+                    + key.keyColumn() + " = ?";
+            default -> throw new IllegalArgumentException("Unknown template kind " + key.kind());
+        };
+        return new SqlTemplate(sql.intern(), key.columns());
     }
 
-    protected ResultSet executeQuery(Connection conn, String sql, Object... params) throws Exception {
-        var stmt = conn.prepareStatement(sql);
-        for (int i = 0; i < params.length; i++) {
-            stmt.setObject(i + 1, params[i]);
+    /**
+     * Run a query and hand the ResultSet to the callback. The statement and the
+     * ResultSet are both closed before this returns.
+     */
+    protected <R> R executeQuery(Connection conn, String sql, ResultSetCallback<R> callback, Object... params)
+            throws Exception {
+        try (var stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, toJdbcValue(params[i]));
+            }
+
+            try (var rs = stmt.executeQuery()) {
+                return callback.run(rs);
+            }
         }
-        return stmt.executeQuery();
+    }
+
+    /**
+     * Run a query and hand each row to the consumer. Column labels are
+     * resolved once per SQL string and reused by every later execution.
+     */
+    protected void forEachRow(Connection conn, String sql, RowConsumer consumer, Object... params)
+            throws Exception {
+        executeQuery(conn, sql, rs -> {
+            Row row = new Row(rs, columnsOf(sql, rs));
+            while (rs.next()) {
+                consumer.accept(row);
+            }
+            return null;
+        }, params);
+    }
+
+    /**
+     * Run a query and map every row to the given type
+     */
+    protected <T> List<T> queryList(Connection conn, String sql, EntityMapper<T> mapper, Object... params)
+            throws Exception {
+        List<T> result = new ArrayList<>();
+        forEachRow(conn, sql, row -> result.add(row.as(mapper)), params);
+        return result;
+    }
+
+    /**
+     * Run a query and map its first row, if any, to the given type
+     */
+    protected <T> Optional<T> queryFirst(Connection conn, String sql, EntityMapper<T> mapper, Object... params)
+            throws Exception {
+        return executeQuery(conn, sql, rs -> {
+            if (!rs.next())
+                return Optional.<T>empty();
+            return Optional.of(new Row(rs, columnsOf(sql, rs)).as(mapper));
+        }, params);
+    }
+
+    /**
+     * Run a query and stream its rows as entities, fetching them from the
+     * server {@link DBConnection#getFetchSize()} at a time instead of loading
+     * the whole result. The connection, statement and ResultSet stay open
+     * until the stream is closed, so callers must use try-with-resources. The
+     * statement is cached with its connection, so its fetch size is put back
+     * before it is returned.
+     */
+    protected <T> Stream<T> queryStream(DBConnection db, String sql, EntityMapper<T> mapper, Object... params)
+            throws Exception {
+        Connection conn = connectionOf(db);
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = conn.prepareStatement(sql);
+            stmt.setFetchSize(db.getFetchSize());
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, toJdbcValue(params[i]));
+            }
+            rs = stmt.executeQuery();
+
+            ResultSet cursor = rs;
+            Row row = new Row(rs, columnsOf(sql, rs));
+            Spliterator<T> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                    Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super T> action) {
+                    try {
+                        if (!cursor.next())
+                            return false;
+                        action.accept(row.as(mapper));
+                        return true;
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+
+            AutoCloseable[] resources = { rs, resetFetchSize(stmt), stmt, conn };
+            return StreamSupport.stream(rows, false).onClose(() -> closeAll(resources));
+        } catch (Exception e) {
+            closeAll(rs, resetFetchSize(stmt), stmt, conn);
+            throw e;
+        }
+    }
+
+    // Later users of the cached statement read whole results again
+    private static AutoCloseable resetFetchSize(PreparedStatement stmt) {
+        return stmt == null ? null : () -> stmt.setFetchSize(0);
+    }
+
+    // Close in order, keeping the first failure
+    private static void closeAll(AutoCloseable... resources) {
+        RuntimeException failure = null;
+        for (AutoCloseable resource : resources) {
+            if (resource == null)
+                continue;
+            try {
+                resource.close();
+            } catch (Exception e) {
+                if (failure == null)
+                    failure = new RuntimeException(e);
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Insert an entity's {@link InsertableMapper#insertColumns()} into a table
+     *
+     * @return the generated key, or -1 if there is none
+     */
+    protected <T> int insert(Connection conn, String table, InsertableMapper<T> mapper, T entity)
+            throws Exception {
+        String sql = TEMPLATES.computeIfAbsent(new TemplateKey("INSERT", table, mapper.insertColumns(), null),
+                RepositoryBase::buildTemplate).sql();
+
+        try (var stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            mapper.bind(stmt, entity, 1);
+            if (stmt.executeUpdate() == 0)
+                throw new Exception("Inserting into " + table + " failed, no rows affected.");
+
+            try (var rs = stmt.getGeneratedKeys()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
+    private static ColumnIndex columnsOf(String sql, ResultSet rs) throws SQLException {
+        ColumnIndex columns = COLUMNS.get(sql);
+        // A changed column count means the table changed under a SELECT *
+        if (columns == null || columns.size() != rs.getMetaData().getColumnCount()) {
+            columns = ColumnIndex.of(rs.getMetaData());
+            COLUMNS.put(sql, columns);
+        }
+        return columns;
     }
 
     protected int executeUpdate(Connection conn, String sql, Object... params) throws Exception {
         try (var stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             for (int i = 0; i < params.length; i++) {
-                stmt.setObject(i + 1, params[i]);
+                stmt.setObject(i + 1, toJdbcValue(params[i]));
             }
 
             stmt.executeUpdate();
@@ -74,10 +275,59 @@ public abstract class RepositoryBase {
         }
     }
 
+    /**
+     * Run an UPDATE/DELETE and return the number of affected rows
+     */
+    protected int executeUpdateCount(Connection conn, String sql, Object... params) throws Exception {
+        try (var stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, toJdbcValue(params[i]));
+            }
+            return stmt.executeUpdate();
+        }
+    }
+
     protected Map<String, Object> filterID(Map<String, Object> data) throws Exception {
         Map<String, Object> mutableData = new HashMap<>(data);
         if (mutableData.containsKey("id"))
             mutableData.remove("id");
         return mutableData;
     }
+
+    protected static Object toJdbcValue(Object value) {
+        return EntityMapper.toJdbcValue(value);
+    }
+
+    /**
+     * A cached SQL string and the column order its placeholders expect.
+     */
+    protected record SqlTemplate(String sql, List<String> columns) {
+        /**
+         * Bind the values of {@code data} in template column order
+         *
+         * @return the next free parameter index
+         */
+        public int bind(PreparedStatement stmt, Map<String, Object> data) throws Exception {
+            int index = 1;
+            for (String column : columns) {
+                stmt.setObject(index++, toJdbcValue(data.get(column)));
+            }
+            return index;
+        }
+
+        /**
+         * Values in template column order, followed by any extra parameters
+         */
+        public Object[] params(Map<String, Object> data, Object... extra) {
+            List<Object> params = new ArrayList<>(columns.size() + extra.length);
+            for (String column : columns) {
+                params.add(data.get(column));
+            }
+            Collections.addAll(params, extra);
+            return params.toArray();
+        }
+    }
+
+    private record TemplateKey(String kind, String table, List<String> columns, String keyColumn) {
+    }
 }
@@ -0,0 +1,69 @@
+package repositories;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import utils.EntityMapper;
+
+/**
+ * Cursor over a ResultSet handed to {@link RowConsumer}s. Columns are read
+ * with typed getters through the query's cached label index, and the same
+ * instance is reused for every row, so walking a result allocates nothing
+ * beyond the values read.
+ */
+public final class Row {
+    private final ResultSet rs;
+    private final ColumnIndex columns;
+
+    Row(ResultSet rs, ColumnIndex columns) {
+        this.rs = rs;
+        this.columns = columns;
+    }
+
+    public int getInt(String label) throws SQLException {
+        return rs.getInt(columns.indexOf(label));
+    }
+
+    public long getLong(String label) throws SQLException {
+        return rs.getLong(columns.indexOf(label));
+    }
+
+    public double getDouble(String label) throws SQLException {
+        return rs.getDouble(columns.indexOf(label));
+    }
+
+    public String getString(String label) throws SQLException {
+        return rs.getString(columns.indexOf(label));
+    }
+
+    public UUID getUuid(String label) throws SQLException {
+        String value = getString(label);
+        return value == null ? null : UUID.fromString(value);
+    }
+
+    public LocalDateTime getLocalDateTime(String label) throws SQLException {
+        Timestamp value = rs.getTimestamp(columns.indexOf(label));
+        return value == null ? null : value.toLocalDateTime();
+    }
+
+    public LocalDate getLocalDate(String label) throws SQLException {
+        java.sql.Date value = rs.getDate(columns.indexOf(label));
+        return value == null ? null : value.toLocalDate();
+    }
+
+    public boolean isNull(String label) throws SQLException {
+        return rs.getObject(columns.indexOf(label)) == null;
+    }
+
+    /**
+     * Map the whole row to an entity, through the generated mapper bound to
+     * this query's layout
+     */
+    public <T> T as(EntityMapper<T> mapper) throws SQLException {
+        return columns.mapperFor(mapper).map(rs);
+    }
+}
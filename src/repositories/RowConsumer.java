@@ -0,0 +1,6 @@
+package repositories;
+
+@FunctionalInterface
+public interface RowConsumer {
+    void accept(Row row) throws Exception;
+}
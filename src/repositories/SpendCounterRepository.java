@@ -0,0 +1,153 @@
+package repositories;
+
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import enums.SpendPeriod;
+import services.DBConnection;
+
+/**
+ * Per-card spend totals bucketed by day and month, so limit checks read a
+ * single row instead of scanning card_operations.
+ */
+public class SpendCounterRepository extends RepositoryBase implements SpendCounterRepositoryContract {
+    public static final String TABLE_NAME = "card_spend_counters";
+    private final DBConnection connection;
+
+    private static final String ADJUST_SQL = "INSERT INTO " + TABLE_NAME
+            + " (card_id, period, period_start, total_amount, operation_count) VALUES (?, ?, ?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE total_amount = total_amount + VALUES(total_amount),"
+            + " operation_count = operation_count + VALUES(operation_count)";
+
+    public SpendCounterRepository(DBConnection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public double totalFor(int cardId, SpendPeriod period, LocalDateTime date) {
+        return executeSafely(() -> {
+            try (var conn = connectionOf(connection)) {
+                return executeQuery(conn, "SELECT total_amount FROM " + TABLE_NAME
+                        + " WHERE card_id = ? AND period = ? AND period_start = ?",
+                        rs -> rs.next() ? rs.getDouble(1) : 0.0, cardId, period, period.startOf(date));
+            }
+        });
+    }
+
+    /**
+     * Add an operation to every bucket it belongs to. Runs on the caller's
+     * connection so it commits together with the operation insert.
+     */
+    void increment(Connection conn, int cardId, LocalDateTime date, double amount) throws Exception {
+        adjust(conn, cardId, date, amount, 1);
+    }
+
+    /**
+     * Take an operation out of every bucket it belonged to, on the caller's
+     * connection so it commits together with the delete or update
+     */
+    void decrement(Connection conn, int cardId, LocalDateTime date, double amount) throws Exception {
+        adjust(conn, cardId, date, -amount, -1);
+    }
+
+    private void adjust(Connection conn, int cardId, LocalDateTime date, double amount, int count) throws Exception {
+        for (SpendPeriod period : SpendPeriod.values()) {
+            executeUpdate(conn, ADJUST_SQL, cardId, period, period.startOf(date), amount, count);
+        }
+    }
+
+    @Override
+    public List<Drift> reconcile() {
+        return executeSafely(() -> transactionally(connection, () -> {
+            try (var conn = connectionOf(connection)) {
+                Map<BucketKey, Totals> expected = loadExpected(conn);
+                Map<BucketKey, Totals> actual = loadActual(conn);
+                List<Drift> drifts = diff(expected, actual);
+
+                if (!drifts.isEmpty()) {
+                    executeUpdate(conn, "DELETE FROM " + TABLE_NAME);
+                    insertAll(conn, expected);
+                }
+                return drifts;
+            }
+        }));
+    }
+
+    private Map<BucketKey, Totals> loadExpected(Connection conn) throws Exception {
+        Map<BucketKey, Totals> expected = new HashMap<>();
+        String sql = "SELECT card_id, DATE(date) AS day, SUM(amount) AS total, COUNT(*) AS cnt FROM "
+                + CardOperationRepository.TABLE_NAME + " GROUP BY card_id, DATE(date)";
+
+        forEachRow(conn, sql, row -> {
+            int cardId = row.getInt("card_id");
+            LocalDate day = row.getLocalDate("day");
+            Totals totals = new Totals(row.getDouble("total"), row.getInt("cnt"));
+
+            // Months are folded from the daily rows
+            expected.merge(new BucketKey(cardId, SpendPeriod.DAY, day), totals, Totals::plus);
+            expected.merge(new BucketKey(cardId, SpendPeriod.MONTH, day.withDayOfMonth(1)), totals, Totals::plus);
+        });
+        return expected;
+    }
+
+    private Map<BucketKey, Totals> loadActual(Connection conn) throws Exception {
+        Map<BucketKey, Totals> actual = new HashMap<>();
+        forEachRow(conn, "SELECT card_id, period, period_start, total_amount, operation_count FROM " + TABLE_NAME,
+                row -> actual.put(new BucketKey(row.getInt("card_id"), SpendPeriod.valueOf(row.getString("period")),
+                        row.getLocalDate("period_start")),
+                        new Totals(row.getDouble("total_amount"), row.getInt("operation_count"))));
+        return actual;
+    }
+
+    private List<Drift> diff(Map<BucketKey, Totals> expected, Map<BucketKey, Totals> actual) {
+        Set<BucketKey> keys = new HashSet<>(expected.keySet());
+        keys.addAll(actual.keySet());
+
+        List<Drift> drifts = new ArrayList<>();
+        for (BucketKey key : keys) {
+            Totals want = expected.getOrDefault(key, Totals.ZERO);
+            Totals have = actual.getOrDefault(key, Totals.ZERO);
+
+            // DECIMAL(15,2) columns, so anything under a cent is rounding noise
+            if (Math.abs(want.amount() - have.amount()) >= 0.005 || want.count() != have.count()) {
+                drifts.add(new Drift(key.cardId(), key.period(), key.periodStart(),
+                        want.amount(), have.amount(), want.count(), have.count()));
+            }
+        }
+        return drifts;
+    }
+
+    private void insertAll(Connection conn, Map<BucketKey, Totals> counters) throws Exception {
+        try (var stmt = conn.prepareStatement("INSERT INTO " + TABLE_NAME
+                + " (card_id, period, period_start, total_amount, operation_count) VALUES (?, ?, ?, ?, ?)")) {
+            for (Map.Entry<BucketKey, Totals> entry : counters.entrySet()) {
+                BucketKey key = entry.getKey();
+                stmt.setInt(1, key.cardId());
+                stmt.setString(2, key.period().name());
+                stmt.setObject(3, key.periodStart());
+                stmt.setDouble(4, entry.getValue().amount());
+                stmt.setInt(5, entry.getValue().count());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private record BucketKey(int cardId, SpendPeriod period, LocalDate periodStart) {
+    }
+
+    private record Totals(double amount, int count) {
+        static final Totals ZERO = new Totals(0, 0);
+
+        Totals plus(Totals other) {
+            return new Totals(amount + other.amount, count + other.count);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package repositories;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import enums.SpendPeriod;
+
+/**
+ * Per-card spend totals bucketed by day and month
+ */
+public interface SpendCounterRepositoryContract {
+    /**
+     * Total spent on a card in the bucket containing the given date
+     *
+     * @param cardId ID of the card
+     * @param period bucket size
+     * @param date   any instant inside the bucket
+     * @return the total, 0 if nothing was spent
+     */
+    double totalFor(int cardId, SpendPeriod period, LocalDateTime date);
+
+    /**
+     * Rebuild every counter from the stored operations and report the buckets
+     * that did not match.
+     *
+     * @return one entry per bucket whose stored total or count had drifted
+     */
+    List<Drift> reconcile();
+
+    /**
+     * A bucket whose stored counter disagreed with the operations
+     */
+    record Drift(int cardId, SpendPeriod period, LocalDate periodStart, double expectedAmount,
+            double actualAmount, int expectedCount, int actualCount) {
+    }
+}
@@ -0,0 +1,35 @@
+package repositories;
+
+import utils.Callback;
+
+/**
+ * Groups repository writes into a single atomic commit.
+ * <p>
+ * Repositories called from inside {@link #execute(Callback)} on the same
+ * thread enlist in the running unit automatically, so services only need to
+ * wrap the outermost call. Nested calls join the outer unit.
+ */
+public interface UnitOfWork {
+    /**
+     * Run the work and commit once when it returns. Any exception rolls back
+     * everything written inside the unit and is rethrown.
+     *
+     * @param work the work to run
+     * @return whatever the work returned
+     */
+    <R> R execute(Callback<R> work) throws Exception;
+
+    /**
+     * Run a callback once the unit running on this thread has committed, or
+     * right away when there is none. Dropped if the unit rolls back, so
+     * in-memory state only follows writes that were kept.
+     */
+    void afterCommit(Runnable callback);
+
+    /**
+     * Run a callback once the unit running on this thread has committed or
+     * rolled back, or right away when there is none. Lets caches drop entries
+     * that other threads may have reloaded while the unit was uncommitted.
+     */
+    void afterCompletion(Runnable callback);
+}
@@ -1,15 +1,14 @@
 package repositories;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import entities.User;
+import entities.UserMapper;
 import services.DBConnection;
-import utils.Hydrator;
 
-public class UserRepository extends RepositoryBase implements RepositoryContract<User> {
+public class UserRepository extends RepositoryBase implements UserRepositoryContract {
     public static final String TABLE_NAME = "users";
     private final DBConnection connection;
 
@@ -20,25 +19,19 @@ public class UserRepository extends RepositoryBase implements RepositoryContract
     @Override
     public Optional<User> findById(String id) {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * FROM " + TABLE_NAME + " WHERE id = ? LIMIT 1", id);
-            if (rs.next()) {
-                return Optional.ofNullable(Hydrator.mapRow(Hydrator.resultSetToMap(rs), User.class));
+            try (var conn = connectionOf(connection)) {
+                return queryFirst(conn, "SELECT * FROM " + TABLE_NAME + " WHERE id = ? LIMIT 1",
+                        UserMapper.INSTANCE, id);
             }
-            return Optional.empty();
         });
     }
 
     @Override
     public List<User> findAll() {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * FROM " + TABLE_NAME);
-            List<User> users = new ArrayList<>();
-            while (rs.next()) {
-                users.add(Hydrator.mapRow(Hydrator.resultSetToMap(rs), User.class));
+            try (var conn = connectionOf(connection)) {
+                return queryList(conn, "SELECT * FROM " + TABLE_NAME, UserMapper.INSTANCE);
             }
-            return users;
         });
     }
 
@@ -47,30 +40,13 @@ public class UserRepository extends RepositoryBase implements RepositoryContract
         return executeSafely(() -> {
             // Exclude ID if present
             Map<String, Object> filteredData = filterID(data);
-            var conn = connection.getConnection();
-
-            var stmt = conn.prepareStatement(
-                    "INSERT INTO " + TABLE_NAME + " " + fieldsOf(filteredData) + " VALUES "
-                            + bindingTemplateOf(filteredData),
-                    java.sql.Statement.RETURN_GENERATED_KEYS);
-
-            // Set parameters
-            int index = 1;
-            for (Object value : filteredData.values()) {
-                stmt.setObject(index++, value);
-            }
-
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0)
-                throw new Exception("Creating user failed, no rows affected.");
-
-            try (var generatedKeys = stmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    int id = generatedKeys.getInt(1);
-                    filteredData.put("id", id);
-                    return Hydrator.mapRow(filteredData, User.class);
-                } else
+            try (var conn = connectionOf(connection)) {
+                int id = insert(conn, TABLE_NAME, UserMapper.INSTANCE, UserMapper.INSTANCE.fromData(filteredData));
+                if (id <= 0)
                     throw new Exception("Creating user failed, no ID obtained.");
+
+                filteredData.put("id", id);
+                return UserMapper.INSTANCE.fromData(filteredData);
             }
         });
     }
@@ -78,8 +54,9 @@ public class UserRepository extends RepositoryBase implements RepositoryContract
     @Override
     public void deleteById(String id) {
         executeSafely(() -> {
-            var conn = connection.getConnection();
-            executeUpdate(conn, "DELETE FROM " + TABLE_NAME + " WHERE id = ?", id);
+            try (var conn = connectionOf(connection)) {
+                executeUpdate(conn, "DELETE FROM " + TABLE_NAME + " WHERE id = ?", id);
+            }
         });
     }
 
@@ -89,33 +66,24 @@ public class UserRepository extends RepositoryBase implements RepositoryContract
 
         userRef[0] = executeSafely(() -> {
             Map<String, Object> filteredData = filterID(fieldsToUpdate);
-            var conn = connection.getConnection();
-
-            var stmt = conn.prepareStatement(
-                    "UPDATE " + TABLE_NAME + " SET " + setClauseOf(filteredData) + " WHERE id = ?");
+            try (var conn = connectionOf(connection)) {
+                SqlTemplate update = updateTemplate(TABLE_NAME, filteredData.keySet(), "id");
+                executeUpdate(conn, update.sql(), update.params(filteredData, user.id()));
 
-            int index = 1;
-            for (Object value : filteredData.values()) {
-                stmt.setObject(index++, value);
+                // Return updated immutable user
+                filteredData.put("id", user.id());
+                return UserMapper.INSTANCE.fromData(filteredData);
             }
-            stmt.setObject(index, user.id());
-
-            stmt.executeUpdate();
-
-            // Return updated immutable user
-            filteredData.put("id", user.id());
-            return Hydrator.mapRow(filteredData, User.class);
         });
     }
 
+    @Override
     public Optional<User> findByEmail(String email) {
         return executeSafely(() -> {
-            var conn = connection.getConnection();
-            var rs = executeQuery(conn, "SELECT * FROM " + TABLE_NAME + " WHERE email = ? LIMIT 1", email);
-            if (rs.next()) {
-                return Optional.of(Hydrator.mapRow(Hydrator.resultSetToMap(rs), User.class));
+            try (var conn = connectionOf(connection)) {
+                return queryFirst(conn, "SELECT * FROM " + TABLE_NAME + " WHERE email = ? LIMIT 1",
+                        UserMapper.INSTANCE, email);
             }
-            return Optional.empty();
         });
     }
 
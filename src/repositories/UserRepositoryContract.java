@@ -0,0 +1,15 @@
+package repositories;
+
+import java.util.Optional;
+
+import entities.User;
+
+public interface UserRepositoryContract extends RepositoryContract<User> {
+    /**
+     * Find a user by email address
+     *
+     * @param email the email to match
+     * @return an Optional containing the user if found, empty otherwise
+     */
+    Optional<User> findByEmail(String email);
+}
@@ -0,0 +1,214 @@
+package services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import enums.AlertLevel;
+import repositories.FraudAlertRepositoryContract;
+import repositories.FraudAlertRepositoryContract.AlertStamp;
+
+/**
+ * Alerts raised on each card over a sliding window, counted by level in
+ * memory for the escalation rule.
+ * <p>
+ * Every card gets one counter per level and per hour of the window, in a ring
+ * indexed by the hour. Counters are rebuilt from the alerts' creation times
+ * the first time a card is needed, then kept current by
+ * {@link #record(int, int, AlertLevel, LocalDateTime)}, so reading a count never
+ * touches the database and costs the same however many alerts a card has
+ * collected. Counts are kept to the hour: an alert stops counting between
+ * {@code window - 1h} and {@code window} after it was raised. Counters of
+ * cards that have not been used for a while are dropped and rebuilt on their
+ * next use.
+ */
+public class AlertCounterStore {
+    public static final long DEFAULT_WINDOW_HOURS = 24;
+    public static final long DEFAULT_IDLE_MINUTES = 30;
+
+    private static final AlertLevel[] LEVELS = AlertLevel.values();
+
+    private final FraudAlertRepositoryContract fraudAlertRepository;
+    private final int buckets;
+    private final long idleNanos;
+
+    private final Map<Integer, CardCounters> counters = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param fraudAlertRepository where counters are rebuilt from
+     * @param window               how long an alert counts, rounded up to the
+     *                             hour
+     * @param idleTimeout          how long the counters of an unused card are
+     *                             kept
+     */
+    public AlertCounterStore(FraudAlertRepositoryContract fraudAlertRepository, Duration window,
+            Duration idleTimeout) {
+        long hours = (window.toMinutes() + 59) / 60;
+        if (hours <= 0)
+            throw new IllegalArgumentException("Alert window must be at least one minute");
+
+        this.fraudAlertRepository = fraudAlertRepository;
+        this.buckets = Math.toIntExact(hours);
+        this.idleNanos = idleTimeout.toNanos();
+    }
+
+    /**
+     * Alerts of one level raised on a card during the window ending at a
+     * point in time
+     *
+     * @param cardId ID of the card
+     * @param level  alert level to count
+     * @param at     end of the window, usually the operation being checked
+     * @return the number of alerts
+     */
+    public int count(int cardId, AlertLevel level, LocalDateTime at) {
+        return countersOf(cardId).count(level, hourOf(at));
+    }
+
+    /**
+     * Seed a card's counters now if they are not loaded, on the caller's
+     * thread and unit of work
+     */
+    public void load(int cardId) {
+        countersOf(cardId);
+    }
+
+    /**
+     * Count an alert once it is committed. Cards whose counters are not loaded
+     * are left alone, they will read the alert from the repository when they
+     * are, and an alert the seeding already read is not counted twice.
+     */
+    public void record(int alertId, int cardId, AlertLevel level, LocalDateTime createdAt) {
+        CardCounters card = counters.get(cardId);
+        if (card != null)
+            card.add(alertId, level, hourOf(createdAt));
+    }
+
+    /**
+     * Drop a card's counters, e.g. after its alerts changed outside of
+     * {@link #record(int, int, AlertLevel, LocalDateTime)}
+     */
+    public void invalidate(int cardId) {
+        counters.remove(cardId);
+    }
+
+    /**
+     * @return how long an alert counts, in hours
+     */
+    public int windowHours() {
+        return buckets;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    private CardCounters countersOf(int cardId) {
+        long now = System.nanoTime();
+        evictIdle(now);
+
+        CardCounters card = counters.computeIfAbsent(cardId, id -> new CardCounters(buckets));
+        card.lastAccess = now;
+        card.seed(cardId, fraudAlertRepository, LocalDateTime.now().minusHours(buckets));
+        return card;
+    }
+
+    // At most one sweep per half idle timeout, run by whichever caller gets there first
+    private void evictIdle(long now) {
+        long last = lastSweep.get();
+        if (now - last < idleNanos / 2 || !lastSweep.compareAndSet(last, now))
+            return;
+
+        counters.values().removeIf(card -> now - card.lastAccess > idleNanos);
+    }
+
+    private static long hourOf(LocalDateTime date) {
+        return date.toEpochSecond(ZoneOffset.UTC) / 3600;
+    }
+
+    /**
+     * Hourly alert counts of one card. Slot {@code hour % buckets} holds the
+     * counts of the hour stamped in it; a slot still stamped with an older
+     * hour is stale and reset on its next write. Guarded by a lock rather than
+     * synchronized, so a virtual thread seeding it from the database does not
+     * pin its carrier.
+     */
+    private static final class CardCounters {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long[] hours;
+        // counts[level][slot]
+        private final int[][] counts;
+        // Alerts counted while seeding could still read them: those recorded before it, and those it read
+        private final Set<Integer> seedable = new HashSet<>();
+        private boolean seeded = false;
+        volatile long lastAccess;
+
+        CardCounters(int buckets) {
+            this.hours = new long[buckets];
+            this.counts = new int[LEVELS.length][buckets];
+        }
+
+        void seed(int cardId, FraudAlertRepositoryContract repository, LocalDateTime since) {
+            lock.lock();
+            try {
+                if (seeded)
+                    return;
+                for (AlertStamp stamp : repository.findStampsSince(cardId, since)) {
+                    if (seedable.add(stamp.id()))
+                        increment(stamp.level(), hourOf(stamp.createdAt()));
+                }
+                seeded = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void add(int alertId, AlertLevel level, long hour) {
+            lock.lock();
+            try {
+                // Committed before the seeding read the repository, already counted by it
+                if (seeded ? seedable.contains(alertId) : !seedable.add(alertId))
+                    return;
+                increment(level, hour);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int count(AlertLevel level, long hour) {
+            lock.lock();
+            try {
+                int total = 0;
+                int[] levelCounts = counts[level.ordinal()];
+                for (int slot = 0; slot < hours.length; slot++) {
+                    if (hours[slot] > hour - hours.length && hours[slot] <= hour)
+                        total += levelCounts[slot];
+                }
+                return total;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void increment(AlertLevel level, long hour) {
+            int slot = (int) Math.floorMod(hour, (long) hours.length);
+            if (hours[slot] != hour) {
+                // Older than what the slot holds: already out of every window
+                if (hours[slot] > hour)
+                    return;
+                hours[slot] = hour;
+                for (int[] levelCounts : counts) {
+                    levelCounts[slot] = 0;
+                }
+            }
+            counts[level.ordinal()][slot]++;
+        }
+    }
+}
@@ -4,15 +4,15 @@ import java.util.Map;
 import java.util.Optional;
 
 import entities.User;
-import repositories.UserRepository;
+import repositories.UserRepositoryContract;
 import utils.Console;
 
 public class AuthService {
     private User currentUser;
     private boolean authenticated;
-    private UserRepository userRepository;
+    private UserRepositoryContract userRepository;
 
-    public AuthService(UserRepository userRepository) {
+    public AuthService(UserRepositoryContract userRepository) {
         this.userRepository = userRepository;
         this.authenticated = false;
     }
@@ -6,7 +6,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import entities.Card;
 import entities.CardOperation;
@@ -14,20 +14,52 @@ import entities.CreditCard;
 import entities.DebitCard;
 import entities.PrepaidCard;
 import enums.OperationType;
-import repositories.CardOperationRepository;
-import repositories.CardRepository;
+import enums.SpendPeriod;
+import repositories.CardOperationRepositoryContract;
+import repositories.CardRepositoryContract;
+import repositories.OperationQuery;
+import repositories.Page;
+import repositories.SpendCounterRepositoryContract;
+import repositories.UnitOfWork;
 import utils.Console;
 
 public class CardOperationService {
-    private final CardOperationRepository cardOperationRepository;
-    private final CardRepository cardRepository;
+    private final CardOperationRepositoryContract cardOperationRepository;
+    private final CardRepositoryContract cardRepository;
+    private final SpendCounterRepositoryContract spendCounterRepository;
     private final FraudDetectionService fraudDetectionService;
+    private final UnitOfWork unitOfWork;
+    private final OperationWindowStore operationWindows;
+    private final CardProfileStore cardProfiles;
+    private final UserActivityStore userActivity;
+    private final LocationDictionary locations;
+    private final LimitSource limitSource;
 
-    public CardOperationService(CardOperationRepository cardOperationRepository, CardRepository cardRepository,
-            FraudDetectionService fraudDetectionService) {
+    /**
+     * Where the limit checks read what a card has spent so far
+     */
+    public enum LimitSource {
+        /** The per-period running totals kept next to the operations */
+        COUNTERS,
+        /** A SUM over the card's operations, computed by the repository */
+        OPERATIONS
+    }
+
+    public CardOperationService(CardOperationRepositoryContract cardOperationRepository,
+            CardRepositoryContract cardRepository, SpendCounterRepositoryContract spendCounterRepository,
+            FraudDetectionService fraudDetectionService, UnitOfWork unitOfWork,
+            OperationWindowStore operationWindows, CardProfileStore cardProfiles, UserActivityStore userActivity,
+            LocationDictionary locations, LimitSource limitSource) {
         this.cardOperationRepository = cardOperationRepository;
         this.cardRepository = cardRepository;
+        this.spendCounterRepository = spendCounterRepository;
         this.fraudDetectionService = fraudDetectionService;
+        this.unitOfWork = unitOfWork;
+        this.operationWindows = operationWindows;
+        this.cardProfiles = cardProfiles;
+        this.userActivity = userActivity;
+        this.locations = locations;
+        this.limitSource = limitSource;
     }
 
     /**
@@ -42,6 +74,32 @@ public class CardOperationService {
      */
     public CardOperation createCardOperation(String cardId, double amount, OperationType operationType, String location)
             throws Exception {
+        // The whole decision commits once: a decline keeps its alerts and card
+        // status change, an approval keeps its debit, operation and counters
+        Optional<Approved> approved = unitOfWork.execute(() -> authorize(cardId, amount, operationType, location));
+
+        if (approved.isEmpty()) {
+            throw new Exception("Transaction declined: Suspicious activity detected");
+        }
+
+        // Committed, so the fraud rules can see it from now on; a new location gets its id only now
+        CardOperation created = approved.get().operation();
+        locations.idOf(created.location());
+        operationWindows.record(created);
+        cardProfiles.record(created);
+        userActivity.record(approved.get().card().getUserId(), created);
+        fraudDetectionService.checkLocation(created);
+        return created;
+    }
+
+    /**
+     * Run every check for an operation and record it if approved
+     *
+     * @return the card and the created operation, or empty if it was declined
+     *         as fraud
+     */
+    private Optional<Approved> authorize(String cardId, double amount, OperationType operationType,
+            String location) throws Exception {
         Optional<Card> cardOpt = cardRepository.findById(cardId);
         if (cardOpt.isEmpty()) {
             throw new Exception("Card not found");
@@ -79,12 +137,19 @@ public class CardOperationService {
 
         // Check for potential fraud BEFORE creating the operation
         if (fraudDetectionService.checkForFraud(card, tempOperation)) {
-            throw new Exception("Transaction declined: Suspicious activity detected");
+            return Optional.empty();
+        }
+
+        // Approved: take the amount off a prepaid balance atomically
+        if (card instanceof PrepaidCard) {
+            if (!cardRepository.debitPrepaidBalance(card.getId(), amount)) {
+                throw new Exception("Insufficient balance on prepaid card");
+            }
         }
 
         // Create in database and return the created operation only if no fraud detected
         try {
-            return cardOperationRepository.create(operationData);
+            return Optional.of(new Approved(card, cardOperationRepository.create(operationData)));
         } catch (Exception e) {
             Console.error("Error creating operation: " + e.getMessage());
             e.printStackTrace();
@@ -103,48 +168,27 @@ public class CardOperationService {
     }
 
     /**
-     * Get all operations for a user's cards
-     * 
-     * @param userId ID of the user
-     * @return List of card operations
+     * Stream the operations matching a query without loading them all at
+     * once. Filtering happens in the repository, and the stream must be
+     * closed.
+     *
+     * @param query Criteria, order and limit
+     * @return Stream of card operations
      */
-    public List<CardOperation> getUserCardOperations(int userId) {
-        List<Card> userCards = cardRepository.findAll()
-                .stream()
-                .filter(card -> card.getUserId() == userId)
-                .collect(Collectors.toList());
-
-        return userCards.stream()
-                .flatMap(card -> cardOperationRepository.findCardOperationsOf(String.valueOf(card.getId())).stream())
-                .collect(Collectors.toList());
+    public Stream<CardOperation> streamOperations(OperationQuery query) {
+        return cardOperationRepository.stream(query);
     }
 
     /**
-     * Filter operations by type
-     * 
-     * @param operations List of operations
-     * @param type       Operation type
-     * @return Filtered list of operations
+     * Get one page of the operations matching a query
+     *
+     * @param query    Criteria, order and the cursor returned with the previous
+     *                 page
+     * @param pageSize Maximum number of operations on the page
+     * @return The page of card operations
      */
-    public List<CardOperation> filterOperationsByType(List<CardOperation> operations, OperationType type) {
-        return operations.stream()
-                .filter(op -> op.getTypeEnum() == type)
-                .collect(Collectors.toList());
-    }
-
-    /**
-     * Filter operations by date range
-     * 
-     * @param operations List of operations
-     * @param from       Start date
-     * @param to         End date
-     * @return Filtered list of operations
-     */
-    public List<CardOperation> filterOperationsByDateRange(List<CardOperation> operations, LocalDateTime from,
-            LocalDateTime to) {
-        return operations.stream()
-                .filter(op -> !op.date().isBefore(from) && !op.date().isAfter(to))
-                .collect(Collectors.toList());
+    public Page<CardOperation> getOperationsPage(OperationQuery query, int pageSize) {
+        return cardOperationRepository.findPage(query, pageSize);
     }
 
     /**
@@ -172,14 +216,8 @@ public class CardOperationService {
         if (card instanceof DebitCard) {
             DebitCard debitCard = (DebitCard) card;
 
-            // Get today's operations for this card
-            String cardId = String.valueOf(card.getId());
-            List<CardOperation> todaysOperations = cardOperationRepository.findCardOperationsOf(cardId)
-                    .stream()
-                    .filter(op -> op.date().toLocalDate().equals(LocalDateTime.now().toLocalDate()))
-                    .collect(Collectors.toList());
-
-            double todaysTotal = todaysOperations.stream().mapToDouble(CardOperation::amount).sum() + amount;
+            // Today's running total for this card
+            double todaysTotal = spentThis(card, SpendPeriod.DAY) + amount;
 
             if (todaysTotal > debitCard.getDailyLimit()) {
                 throw new Exception("Operation exceeds daily limit of " + debitCard.getDailyLimit());
@@ -191,17 +229,8 @@ public class CardOperationService {
         if (card instanceof CreditCard) {
             CreditCard creditCard = (CreditCard) card;
 
-            // Get this month's operations
-            String cardId = String.valueOf(card.getId());
-            LocalDateTime startOfMonth = LocalDateTime.now().withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0)
-                    .withNano(0);
-
-            List<CardOperation> monthsOperations = cardOperationRepository.findCardOperationsOf(cardId)
-                    .stream()
-                    .filter(op -> !op.date().isBefore(startOfMonth))
-                    .collect(Collectors.toList());
-
-            double monthsTotal = monthsOperations.stream().mapToDouble(CardOperation::amount).sum() + amount;
+            // This month's running total
+            double monthsTotal = spentThis(card, SpendPeriod.MONTH) + amount;
 
             if (monthsTotal > creditCard.getMonthlyLimit()) {
                 throw new Exception("Operation exceeds monthly credit limit of " + creditCard.getMonthlyLimit());
@@ -209,18 +238,31 @@ public class CardOperationService {
         }
     }
 
+    // Amount spent on the card in the current period, before this operation
+    private double spentThis(Card card, SpendPeriod period) {
+        LocalDateTime now = LocalDateTime.now();
+        return switch (limitSource) {
+            case COUNTERS -> spendCounterRepository.totalFor(card.getId(), period, now);
+            case OPERATIONS -> cardOperationRepository.sumAmountSince(String.valueOf(card.getId()),
+                    period.startOf(now).atStartOfDay());
+        };
+    }
+
     private void checkPrepaidCardBalance(Card card, double amount) throws Exception {
         if (card instanceof PrepaidCard) {
             PrepaidCard prepaidCard = (PrepaidCard) card;
 
+            // Early decline on the loaded balance; the authoritative check is the
+            // conditional debit once the operation is approved
             if (amount > prepaidCard.getAvailableBalance()) {
                 throw new Exception("Insufficient balance on prepaid card");
             }
-
-            // Update the balance after successful operation
-            Map<String, Object> updateData = new HashMap<>();
-            updateData.put("available_balance", prepaidCard.getAvailableBalance() - amount);
-            cardRepository.update(prepaidCard, updateData);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * An approved operation and the card it was made with
+     */
+    private record Approved(Card card, CardOperation operation) {
+    }
+}
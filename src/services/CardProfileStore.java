@@ -0,0 +1,262 @@
+package services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import entities.CardOperation;
+import enums.OperationType;
+import repositories.CardOperationRepositoryContract;
+import repositories.OperationQuery;
+
+/**
+ * Usual behaviour of each card, learnt from its approved operations.
+ * <p>
+ * A profile holds exponentially weighted statistics: mean and variance of the
+ * amount, and share of each operation type. Each approved operation updates
+ * its card's profile in constant time and nothing is read back from history,
+ * apart from an optional replay at startup.
+ * <p>
+ * Profiles are stored as rows of a flat {@code double[]}, one row per card
+ * slot, in fixed-size chunks so growing never copies the existing rows. Rows
+ * are guarded by striped locks. Profiles of cards with no operation for the
+ * idle timeout are dropped and their slots reused, so the chunks only grow
+ * with the number of cards in use.
+ */
+public class CardProfileStore {
+    public static final double DEFAULT_ALPHA = 0.1;
+    public static final long DEFAULT_WARMUP_DAYS = 90;
+    public static final long DEFAULT_IDLE_DAYS = 90;
+
+    private static final OperationType[] TYPES = OperationType.values();
+
+    // Row layout
+    private static final int COUNT = 0;
+    private static final int MEAN = 1;
+    private static final int VARIANCE = 2;
+    private static final int LAST_SECOND = 3;
+    private static final int TYPE_SHARE = 4;
+    private static final int STRIDE = TYPE_SHARE + TYPES.length;
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_ROWS = 1 << CHUNK_BITS;
+    private static final int STRIPES = 64;
+    private static final long SWEEP_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private final double alpha;
+    private final long idleSeconds;
+
+    private final Map<Integer, Integer> slots = new ConcurrentHashMap<>();
+    private volatile double[][] chunks = new double[0][];
+    private final ReentrantLock growLock = new ReentrantLock();
+    private int nextSlot = 0;
+    // Slots of dropped profiles, cleared, handed out before new ones
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param alpha       weight of the newest operation in the amount and type
+     *                    statistics, between 0 and 1
+     * @param idleTimeout how long the profile of a card without operations is
+     *                    kept
+     */
+    public CardProfileStore(double alpha, Duration idleTimeout) {
+        if (alpha <= 0 || alpha > 1)
+            throw new IllegalArgumentException("Profile alpha must be in (0, 1]");
+        if (idleTimeout.isZero() || idleTimeout.isNegative())
+            throw new IllegalArgumentException("Profile idle timeout must be positive");
+
+        this.alpha = alpha;
+        this.idleSeconds = idleTimeout.toSeconds();
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Fold an approved operation into its card's profile
+     */
+    public void record(CardOperation operation) {
+        evictIdle();
+
+        double amount = operation.amount();
+        double second = operation.date().toEpochSecond(ZoneOffset.UTC);
+        int type = operation.getTypeEnum().ordinal();
+
+        while (true) {
+            int slot = slots.computeIfAbsent(operation.cardId(), id -> allocate());
+            double[] chunk = chunks[slot >>> CHUNK_BITS];
+            int row = (slot & (CHUNK_ROWS - 1)) * STRIDE;
+
+            ReentrantLock lock = stripes[slot & (STRIPES - 1)];
+            lock.lock();
+            try {
+                // Dropped since it was looked up, and maybe handed to another card: look it up again
+                if (!Integer.valueOf(slot).equals(slots.get(operation.cardId())))
+                    continue;
+
+                if (chunk[row + COUNT] == 0) {
+                    chunk[row + MEAN] = amount;
+                    chunk[row + VARIANCE] = 0;
+                    chunk[row + TYPE_SHARE + type] = 1;
+                } else {
+                    double diff = amount - chunk[row + MEAN];
+                    double increment = alpha * diff;
+                    chunk[row + MEAN] += increment;
+                    chunk[row + VARIANCE] = (1 - alpha) * (chunk[row + VARIANCE] + diff * increment);
+
+                    for (int t = 0; t < TYPES.length; t++) {
+                        chunk[row + TYPE_SHARE + t] = (1 - alpha) * chunk[row + TYPE_SHARE + t]
+                                + (t == type ? alpha : 0);
+                    }
+                }
+                chunk[row + COUNT]++;
+                chunk[row + LAST_SECOND] = Math.max(chunk[row + LAST_SECOND], second);
+                return;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Rebuild profiles from the operations made since a point in time, oldest
+     * first
+     *
+     * @return the number of operations replayed
+     */
+    public long warmUp(CardOperationRepositoryContract cardOperationRepository, LocalDateTime since) {
+        long replayed = 0;
+        try (Stream<CardOperation> operations = cardOperationRepository.stream(OperationQuery.all()
+                .between(since, null).orderBy(OperationQuery.Order.OLDEST_FIRST))) {
+            for (CardOperation operation : (Iterable<CardOperation>) operations::iterator) {
+                record(operation);
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * A card's profile
+     *
+     * @param cardId ID of the card
+     * @return the profile, empty if the card has no approved operation yet, or
+     *         none within the idle timeout
+     */
+    public Optional<CardProfile> profileOf(int cardId) {
+        Integer slot = slots.get(cardId);
+        if (slot == null)
+            return Optional.empty();
+
+        double[] chunk = chunks[slot >>> CHUNK_BITS];
+        int row = (slot & (CHUNK_ROWS - 1)) * STRIDE;
+        ReentrantLock lock = stripes[slot & (STRIPES - 1)];
+        lock.lock();
+        try {
+            if (!slot.equals(slots.get(cardId)))
+                return Optional.empty();
+
+            Map<OperationType, Double> typeShares = new EnumMap<>(OperationType.class);
+            for (int t = 0; t < TYPES.length; t++) {
+                typeShares.put(TYPES[t], chunk[row + TYPE_SHARE + t]);
+            }
+            return Optional.of(new CardProfile((long) chunk[row + COUNT], chunk[row + MEAN],
+                    Math.sqrt(chunk[row + VARIANCE]), typeShares));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    // At most one sweep per hour, run by whichever caller gets there first
+    private void evictIdle() {
+        long now = System.nanoTime();
+        long last = lastSweep.get();
+        if (now - last < SWEEP_NANOS || !lastSweep.compareAndSet(last, now))
+            return;
+
+        long cutoff = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) - idleSeconds;
+        for (Map.Entry<Integer, Integer> entry : slots.entrySet()) {
+            int slot = entry.getValue();
+            double[] chunk = chunks[slot >>> CHUNK_BITS];
+            int row = (slot & (CHUNK_ROWS - 1)) * STRIDE;
+            ReentrantLock lock = stripes[slot & (STRIPES - 1)];
+            // Cards busy right now are not idle, skip them rather than wait
+            if (!lock.tryLock())
+                continue;
+            try {
+                if (chunk[row + LAST_SECOND] >= cutoff || !slots.remove(entry.getKey(), slot))
+                    continue;
+                Arrays.fill(chunk, row, row + STRIDE, 0);
+            } finally {
+                lock.unlock();
+            }
+            release(slot);
+        }
+    }
+
+    private void release(int slot) {
+        growLock.lock();
+        try {
+            freeSlots.push(slot);
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    // A dropped profile's slot if there is one, else the next one, adding a chunk when the last one is full
+    private int allocate() {
+        growLock.lock();
+        try {
+            Integer free = freeSlots.poll();
+            if (free != null)
+                return free;
+
+            int slot = nextSlot++;
+            double[][] current = chunks;
+            if ((slot >>> CHUNK_BITS) >= current.length) {
+                double[][] grown = new double[current.length + 1][];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                grown[current.length] = new double[CHUNK_ROWS * STRIDE];
+                chunks = grown;
+            }
+            return slot;
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    /**
+     * Snapshot of a card's profile
+     *
+     * @param observations      approved operations folded in
+     * @param meanAmount        weighted mean amount
+     * @param stdDevAmount      weighted standard deviation of the amount
+     * @param typeShares        weighted share of each operation type
+     */
+    public record CardProfile(long observations, double meanAmount, double stdDevAmount,
+            Map<OperationType, Double> typeShares) {
+        /**
+         * @return how many standard deviations an amount is above the mean
+         */
+        public double zScore(double amount, double minStdDev) {
+            return (amount - meanAmount) / Math.max(stdDevAmount, minStdDev);
+        }
+    }
+}
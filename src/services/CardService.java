@@ -14,12 +14,12 @@ import entities.DebitCard;
 import entities.PrepaidCard;
 import enums.CardStatus;
 import enums.CardType;
-import repositories.CardRepository;
+import repositories.CardRepositoryContract;
 
 public class CardService {
-    private final CardRepository cardRepository;
+    private final CardRepositoryContract cardRepository;
 
-    public CardService(CardRepository cardRepository) {
+    public CardService(CardRepositoryContract cardRepository) {
         this.cardRepository = cardRepository;
     }
 
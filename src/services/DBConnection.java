@@ -1,31 +1,294 @@
 package services;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class DBConnection {
-    private String url;
-    private String user;
-    private String password;
-    private String dbName;
+/**
+ * Bounded JDBC connection pool.
+ * <p>
+ * Connections handed out by {@link #getConnection()} are validated before use
+ * and go back to the pool when closed, so callers should always borrow them
+ * with try-with-resources.
+ */
+public class DBConnection implements AutoCloseable {
+    public static final int DEFAULT_MAX_POOL_SIZE = 10;
+    public static final long DEFAULT_BORROW_TIMEOUT_MS = 5000;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    public static final int DEFAULT_FETCH_SIZE = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final String dbName;
+    private final int maxPoolSize;
+    private final long borrowTimeoutMillis;
+    private final int statementCacheSize;
+    private final int fetchSize;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private volatile boolean databaseReady = false;
+    private volatile boolean closed = false;
 
     public DBConnection(String url, String user, String password, String dbName) {
+        this(url, user, password, dbName, DEFAULT_MAX_POOL_SIZE, DEFAULT_BORROW_TIMEOUT_MS,
+                DEFAULT_STATEMENT_CACHE_SIZE, DEFAULT_FETCH_SIZE);
+    }
+
+    public DBConnection(String url, String user, String password, String dbName, int maxPoolSize,
+            long borrowTimeoutMillis, int statementCacheSize, int fetchSize) {
+        if (maxPoolSize <= 0)
+            throw new IllegalArgumentException("Pool size must be greater than zero");
+
         this.url = url;
         this.user = user;
         this.password = password;
         this.dbName = dbName;
+        this.maxPoolSize = maxPoolSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.fetchSize = fetchSize;
+        this.permits = new Semaphore(maxPoolSize, true);
     }
 
+    /**
+     * Borrow a connection from the pool, opening a new one if no idle
+     * connection is available and the pool is not yet full. Statements
+     * prepared on it are cached per physical connection.
+     *
+     * @return a pooled connection, returned to the pool on close()
+     * @throws SQLException if no connection could be obtained in time
+     */
     public Connection getConnection() throws SQLException {
-        // 1. Connect without DB to create it if it doesn't exist
-        try (Connection tmpConn = DriverManager.getConnection(url, user, password);
-                Statement stmt = tmpConn.createStatement()) {
-            stmt.executeUpdate("CREATE DATABASE IF NOT EXISTS `" + dbName + "`");
+        if (closed)
+            throw new SQLException("Connection pool is closed");
+
+        ensureDatabase();
+
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            totalWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new SQLTimeoutException(
+                    "Timed out after " + borrowTimeoutMillis + " ms waiting for a database connection");
+        }
+
+        try {
+            PooledConnection pooled = takeValidIdle();
+            if (pooled == null)
+                pooled = openPhysical();
+
+            active.incrementAndGet();
+            borrows.incrementAndGet();
+            return lease(pooled);
+        } catch (SQLException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Rows the driver fetches per round trip when a query result is streamed
+     * instead of loaded in full
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public PoolStats getStats() {
+        return new PoolStats(
+                active.get(),
+                idle.size(),
+                maxPoolSize,
+                borrows.get(),
+                TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()),
+                timeouts.get());
+    }
+
+    /**
+     * Close every idle connection and refuse new borrows. Connections still in
+     * use are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection conn;
+        while ((conn = idle.pollFirst()) != null) {
+            conn.discard();
+        }
+    }
+
+    // Create the database once, on first use of the pool
+    private void ensureDatabase() throws SQLException {
+        if (databaseReady)
+            return;
+
+        synchronized (this) {
+            if (databaseReady)
+                return;
+
+            try (Connection tmpConn = DriverManager.getConnection(url, user, password);
+                    Statement stmt = tmpConn.createStatement()) {
+                stmt.executeUpdate("CREATE DATABASE IF NOT EXISTS `" + dbName + "`");
+            }
+            databaseReady = true;
         }
+    }
+
+    private PooledConnection openPhysical() throws SQLException {
+        return new PooledConnection(DriverManager.getConnection(url + dbName, user, password),
+                new StatementCache(statementCacheSize));
+    }
+
+    // Most recently used connections first, dropping the ones that went stale
+    private PooledConnection takeValidIdle() {
+        PooledConnection conn;
+        while ((conn = idle.pollFirst()) != null) {
+            try {
+                if (conn.connection().isValid(VALIDATION_TIMEOUT_SECONDS))
+                    return conn;
+            } catch (SQLException ignored) {
+                // treat as invalid
+            }
+            conn.discard();
+        }
+        return null;
+    }
+
+    private void release(PooledConnection pooled) {
+        Connection physical = pooled.connection();
+        try {
+            if (closed || physical.isClosed()) {
+                pooled.discard();
+                return;
+            }
+
+            // Hand the connection back in a clean state
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            pooled.discard();
+        } finally {
+            active.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    private Connection lease(PooledConnection pooled) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new LeaseHandler(pooled));
+    }
 
-        // 2. Connect to the actual database
-        return DriverManager.getConnection(url + dbName, user, password);
+    /**
+     * A physical connection together with its statement cache.
+     */
+    private record PooledConnection(Connection connection, StatementCache statements) {
+        void discard() {
+            statements.closeAll();
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // nothing left to do with a broken connection
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the pool counters.
+     *
+     * @param active          connections currently borrowed
+     * @param idle            connections waiting in the pool
+     * @param maxSize         upper bound on open connections
+     * @param borrows         total successful borrows
+     * @param totalWaitMillis cumulative time callers spent waiting for a
+     *                        connection
+     * @param timeouts        borrows that gave up waiting
+     */
+    public record PoolStats(int active, int idle, int maxSize, long borrows, long totalWaitMillis, long timeouts) {
+    }
+
+    /**
+     * Forwards calls to the physical connection until close(), which returns
+     * it to the pool instead of closing it.
+     */
+    private class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final Connection physical;
+        private boolean returned = false;
+
+        LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+            this.physical = pooled.connection();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    break;
+            }
+
+            if (returned)
+                throw new SQLException("Connection has already been returned to the pool");
+
+            if (method.getName().equals("prepareStatement")) {
+                Class<?>[] types = method.getParameterTypes();
+                if (types.length == 1)
+                    return pooled.statements().prepare(physical, (String) args[0], Statement.NO_GENERATED_KEYS);
+                if (types.length == 2 && types[1] == int.class)
+                    return pooled.statements().prepare(physical, (String) args[0], (int) args[1]);
+            }
+
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
     }
 }
@@ -1,168 +1,86 @@
 package services;
 
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
 import entities.Card;
 import entities.CardOperation;
 import entities.FraudAlert;
 import enums.AlertLevel;
 import enums.CardStatus;
-import repositories.CardOperationRepository;
-import repositories.CardRepository;
-import repositories.FraudAlertRepository;
+import fraud.FraudContext;
+import fraud.FraudFinding;
+import fraud.FraudRuleEngine;
+import fraud.FraudRuleEngine.RuleStats;
+import repositories.CardRepositoryContract;
+import repositories.FraudAlertRepositoryContract;
+import repositories.LocationAlertRepositoryContract;
+import repositories.UnitOfWork;
+import services.HotLocationDetector.HotLocation;
 import utils.Console;
 
-import java.time.LocalDateTime;
-import java.time.Duration;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
-
 public class FraudDetectionService {
-    private final FraudAlertRepository fraudAlertRepository;
-    private final CardRepository cardRepository;
-    private final CardOperationRepository cardOperationRepository;
-
-    // Define threshold constants
-    private static final double DEBIT_HIGH_AMOUNT_THRESHOLD = 10000.0;
-    private static final double CREDIT_HIGH_AMOUNT_THRESHOLD = 20000.0;
-    private static final double PREPAID_HIGH_AMOUNT_THRESHOLD = 5000.0;
-    private static final int RAPID_LOCATION_CHANGE_MINUTES = 10;
-    private static final int MULTIPLE_TRANSACTIONS_MINUTES = 2;
-    private static final int MULTIPLE_TRANSACTIONS_COUNT = 3;
-    private static final int ESCALATION_HOURS = 24;
+    private final FraudAlertRepositoryContract fraudAlertRepository;
+    private final CardRepositoryContract cardRepository;
+    private final OperationWindowStore operationWindows;
+    private final AlertCounterStore alertCounters;
+    private final FraudRuleEngine ruleEngine;
+    private final HotLocationDetector hotLocations;
+    private final LocationAlertRepositoryContract locationAlertRepository;
+    private final UnitOfWork unitOfWork;
 
     public FraudDetectionService(
-            FraudAlertRepository fraudAlertRepository,
-            CardRepository cardRepository,
-            CardOperationRepository cardOperationRepository) {
+            FraudAlertRepositoryContract fraudAlertRepository,
+            CardRepositoryContract cardRepository,
+            OperationWindowStore operationWindows,
+            AlertCounterStore alertCounters,
+            FraudRuleEngine ruleEngine,
+            HotLocationDetector hotLocations,
+            LocationAlertRepositoryContract locationAlertRepository,
+            UnitOfWork unitOfWork) {
         this.fraudAlertRepository = fraudAlertRepository;
         this.cardRepository = cardRepository;
-        this.cardOperationRepository = cardOperationRepository;
+        this.operationWindows = operationWindows;
+        this.alertCounters = alertCounters;
+        this.ruleEngine = ruleEngine;
+        this.hotLocations = hotLocations;
+        this.locationAlertRepository = locationAlertRepository;
+        this.unitOfWork = unitOfWork;
     }
 
+    /**
+     * Run the fraud rules on an operation. When one fires, its alert is
+     * recorded and the card suspended or blocked according to the alert level.
+     *
+     * @return true if the operation must be declined
+     */
     public boolean checkForFraud(Card card, CardOperation newOperation) {
-        // Check card status first
-        if (!CardStatus.ACTIVE.name().equals(card.getStatus())) {
-            createAlert("Transaction attempted on non-active card", AlertLevel.AVERTISSEMENT,
-                    String.valueOf(card.getId()));
-            return true;
-        }
+        // Recent operations come from memory and are only read if a rule needs them
+        FraudContext context = new FraudContext(card, newOperation,
+                () -> operationWindows.since(card.getId(), newOperation.date().minus(ruleEngine.lookback())));
 
-        // Get recent operations for this card
-        List<CardOperation> recentOperations = cardOperationRepository
-                .findCardOperationsOf(String.valueOf(card.getId()));
-
-        // Check for high amount transactions
-        if (isHighAmountTransaction(card, newOperation.amount())) {
-            return true;
-        }
-
-        // Check for rapid geographical changes
-        if (checkRapidGeographicalChange(recentOperations, newOperation)) {
-            return true;
-        }
-
-        // Check for multiple transactions in short time
-        if (checkMultipleTransactionsShortTime(recentOperations, newOperation)) {
-            return true;
-        }
-
-        // Check for escalation (multiple warnings in last 24 hours)
-        if (checkForEscalation(String.valueOf(card.getId()))) {
-            return true;
-        }
-
-        return false;
+        Optional<FraudFinding> finding = ruleEngine.evaluate(context);
+        finding.ifPresent(f -> createAlert(f.description(), f.level(), String.valueOf(card.getId())));
+        return finding.isPresent();
     }
 
-    private boolean isHighAmountTransaction(Card card, double amount) {
-        double threshold;
-        AlertLevel level;
-
-        switch (card.getCardTypeEnum()) {
-            case DEBIT:
-                threshold = DEBIT_HIGH_AMOUNT_THRESHOLD;
-                break;
-            case CREDIT:
-                threshold = CREDIT_HIGH_AMOUNT_THRESHOLD;
-                break;
-            case PREPAID:
-                threshold = PREPAID_HIGH_AMOUNT_THRESHOLD;
-                break;
-            default:
-                threshold = DEBIT_HIGH_AMOUNT_THRESHOLD; // Default
-        }
-
-        if (amount > threshold) {
-            level = amount > threshold * 1.5 ? AlertLevel.CRITIQUE : AlertLevel.AVERTISSEMENT;
-            String message = "High amount transaction detected: " + amount + " (threshold: " + threshold + ")";
-
-            createAlert(message, level, String.valueOf(card.getId()));
-            updateCardStatus(card, level);
-            return true;
-        }
-        return false;
+    /**
+     * Count an approved operation towards its location's distinct cards, and
+     * raise a location alert when the location turns hot
+     */
+    public void checkLocation(CardOperation operation) {
+        hotLocations.record(operation.cardId(), operation.location(), operation.date())
+                .ifPresent(this::createLocationAlert);
     }
 
-    private boolean checkRapidGeographicalChange(List<CardOperation> operations, CardOperation newOperation) {
-        for (CardOperation op : operations) {
-            // Skip if it's the same location
-            if (op.location().equals(newOperation.location())) {
-                continue;
-            }
-
-            // Check time difference (less than 10 minutes)
-            Duration duration = Duration.between(op.date(), newOperation.date());
-            if (Math.abs(duration.toMinutes()) < RAPID_LOCATION_CHANGE_MINUTES) {
-                String message = "Rapid geographical change detected: "
-                        + op.location() + " to " + newOperation.location()
-                        + " in " + duration.toMinutes() + " minutes";
-
-                createAlert(message, AlertLevel.CRITIQUE, String.valueOf(newOperation.cardId()));
-                updateCardStatus(cardRepository.findById(String.valueOf(newOperation.cardId())).orElse(null),
-                        AlertLevel.CRITIQUE);
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private boolean checkMultipleTransactionsShortTime(List<CardOperation> operations, CardOperation newOperation) {
-        // Filter operations in the last few minutes
-        LocalDateTime cutoffTime = newOperation.date().minusMinutes(MULTIPLE_TRANSACTIONS_MINUTES);
-
-        List<CardOperation> recentOps = operations.stream()
-                .filter(op -> !op.id().equals(newOperation.id()))
-                .filter(op -> op.date().isAfter(cutoffTime))
-                .collect(Collectors.toList());
-
-        // Count recent operations + the new one
-        if (recentOps.size() + 1 >= MULTIPLE_TRANSACTIONS_COUNT) {
-            String message = "Multiple transactions detected in short time: "
-                    + (recentOps.size() + 1) + " transactions in less than "
-                    + MULTIPLE_TRANSACTIONS_MINUTES + " minutes";
-
-            createAlert(message, AlertLevel.AVERTISSEMENT, String.valueOf(newOperation.cardId()));
-            updateCardStatus(cardRepository.findById(String.valueOf(newOperation.cardId())).orElse(null),
-                    AlertLevel.AVERTISSEMENT);
-            return true;
-        }
-        return false;
-    }
-
-    private boolean checkForEscalation(String cardId) {
-        List<FraudAlert> recentAlerts = fraudAlertRepository.findByCardId(Integer.parseInt(cardId)).stream()
-                .filter(alert -> alert.getLevelEnum() == AlertLevel.AVERTISSEMENT)
-                .collect(Collectors.toList());
-
-        // If we have multiple warnings, escalate to CRITIQUE
-        if (recentAlerts.size() >= 2) {
-            String message = "Escalation: Multiple warnings detected in last " + ESCALATION_HOURS + " hours";
-            createAlert(message, AlertLevel.CRITIQUE, cardId);
-            updateCardStatus(cardRepository.findById(cardId).orElse(null), AlertLevel.CRITIQUE);
-            return true;
-        }
-        return false;
+    /**
+     * @return per-rule evaluation, hit and latency counters
+     */
+    public List<RuleStats> getRuleStats() {
+        return ruleEngine.getStats();
     }
 
     private void createAlert(String description, AlertLevel level, String cardId) {
@@ -190,7 +108,10 @@ public class FraudDetectionService {
             alertData.put("level", level.name());
             alertData.put("card_id", cardId);
 
-            fraudAlertRepository.create(alertData);
+            FraudAlert alert = fraudAlertRepository.create(alertData);
+            // Counted once stored for good, a rolled back alert must not escalate the card later
+            LocalDateTime createdAt = LocalDateTime.now();
+            unitOfWork.afterCommit(() -> alertCounters.record(alert.id(), alert.cardId(), level, createdAt));
 
             // Update card status immediately
             updateCardStatus(cardRepository.findById(cardId).orElse(null), level);
@@ -200,6 +121,24 @@ public class FraudDetectionService {
         }
     }
 
+    private void createLocationAlert(HotLocation hot) {
+        try {
+            String description = "Hot location: " + hot.distinctCards() + " different cards used at "
+                    + hot.location() + " in the last " + hotLocations.window().toMinutes() + " minutes";
+            Console.alert("Fraud Detection - LOCATION: " + description);
+
+            Map<String, Object> alertData = new HashMap<>();
+            alertData.put("location_id", hot.locationId());
+            alertData.put("description", description);
+            alertData.put("distinct_cards", hot.distinctCards());
+            alertData.put("level", AlertLevel.AVERTISSEMENT.name());
+
+            locationAlertRepository.create(alertData);
+        } catch (Exception e) {
+            Console.error("Error creating location alert: " + e.getMessage());
+        }
+    }
+
     private void updateCardStatus(Card card, AlertLevel level) {
         if (card == null)
             return;
@@ -231,6 +170,10 @@ public class FraudDetectionService {
         }
     }
 
+    /**
+     * Operations on a card that is not active are refused before the fraud
+     * rules run: they raise no alert and leave the card's status as it is
+     */
     public boolean canProcessOperation(Card card) {
         // Check if the card status allows operations
         return CardStatus.ACTIVE.name().equals(card.getStatus());
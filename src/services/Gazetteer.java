@@ -0,0 +1,188 @@
+package services;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import utils.LocationNames;
+
+/**
+ * Read-only index of known places, from location name to coordinates.
+ * <p>
+ * Places are numbered from 0 and their coordinates held in primitive arrays.
+ * Names and aliases go in an open-addressing table keyed by their
+ * {@link LocationNames normalized} form. Normalization happens while hashing
+ * and comparing, so {@link #idOf(CharSequence)} does not allocate and can run
+ * on every authorization.
+ * <p>
+ * The source is a CSV of {@code name,latitude,longitude,aliases}, aliases
+ * separated by {@code |}; lines starting with {@code #} and the header line
+ * are skipped.
+ */
+public final class Gazetteer {
+    public static final String DEFAULT_RESOURCE = "gazetteer.csv";
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private final String[] names;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    // Radians and cosine of the latitude, precomputed for the distance
+    private final double[] latRadians;
+    private final double[] lonRadians;
+    private final double[] cosLatitudes;
+
+    // Open addressing with linear probing; slot holds place id + 1, 0 when empty
+    private final int[] slots;
+    private final int[] slotHashes;
+    private final String[] slotKeys;
+    private final int mask;
+
+    private Gazetteer(List<String> names, List<double[]> coordinates, List<String[]> aliases) {
+        int count = names.size();
+        this.names = names.toArray(new String[0]);
+        this.latitudes = new double[count];
+        this.longitudes = new double[count];
+        this.latRadians = new double[count];
+        this.lonRadians = new double[count];
+        this.cosLatitudes = new double[count];
+
+        int keys = count;
+        for (String[] placeAliases : aliases) {
+            keys += placeAliases.length;
+        }
+        // Keep the table at most half full so probes stay short
+        int capacity = Integer.highestOneBit(Math.max(2, keys) * 2 - 1) << 1;
+        this.slots = new int[capacity];
+        this.slotHashes = new int[capacity];
+        this.slotKeys = new String[capacity];
+        this.mask = capacity - 1;
+
+        for (int id = 0; id < count; id++) {
+            double[] coordinate = coordinates.get(id);
+            latitudes[id] = coordinate[0];
+            longitudes[id] = coordinate[1];
+            latRadians[id] = Math.toRadians(coordinate[0]);
+            lonRadians[id] = Math.toRadians(coordinate[1]);
+            cosLatitudes[id] = Math.cos(latRadians[id]);
+
+            put(this.names[id], id);
+            for (String alias : aliases.get(id)) {
+                put(alias, id);
+            }
+        }
+    }
+
+    public static Gazetteer fromResource(String resource) throws Exception {
+        try (InputStream input = Gazetteer.class.getClassLoader().getResourceAsStream(resource)) {
+            if (input == null)
+                throw new Exception("Gazetteer resource not found: " + resource);
+            return load(new InputStreamReader(input, StandardCharsets.UTF_8));
+        }
+    }
+
+    public static Gazetteer fromFile(Path file) throws Exception {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    private static Gazetteer load(Reader source) throws Exception {
+        List<String> names = new ArrayList<>();
+        List<double[]> coordinates = new ArrayList<>();
+        List<String[]> aliases = new ArrayList<>();
+
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.startsWith("name,"))
+                continue;
+
+            String[] fields = trimmed.split(",", -1);
+            if (fields.length < 3 || fields[0].isBlank())
+                throw new Exception("Malformed gazetteer line " + lineNumber + ": " + line);
+
+            names.add(fields[0].trim());
+            try {
+                coordinates.add(new double[] { Double.parseDouble(fields[1].trim()),
+                        Double.parseDouble(fields[2].trim()) });
+            } catch (NumberFormatException e) {
+                throw new Exception("Malformed coordinates on gazetteer line " + lineNumber + ": " + line, e);
+            }
+            aliases.add(fields.length > 3 && !fields[3].isBlank() ? fields[3].split("\\|") : new String[0]);
+        }
+        return new Gazetteer(names, coordinates, aliases);
+    }
+
+    /**
+     * Place a location name resolves to
+     *
+     * @param location name as typed, in any case or spacing
+     * @return the place id, -1 if the name is unknown
+     */
+    public int idOf(CharSequence location) {
+        if (location == null)
+            return -1;
+
+        int hash = LocationNames.hash(location);
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (slotHashes[slot] == hash && LocationNames.sameName(slotKeys[slot], location))
+                return slots[slot] - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Great-circle distance between two places, by the haversine formula
+     *
+     * @return the distance in kilometres
+     */
+    public double distanceKm(int from, int to) {
+        if (from == to)
+            return 0.0;
+
+        double sinLat = Math.sin((latRadians[to] - latRadians[from]) / 2);
+        double sinLon = Math.sin((lonRadians[to] - lonRadians[from]) / 2);
+        double h = sinLat * sinLat + cosLatitudes[from] * cosLatitudes[to] * sinLon * sinLon;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(h)));
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public double latitude(int id) {
+        return latitudes[id];
+    }
+
+    public double longitude(int id) {
+        return longitudes[id];
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    private void put(String key, int id) {
+        int hash = LocationNames.hash(key);
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            // First place wins a name claimed twice
+            if (slotHashes[slot] == hash && LocationNames.sameName(slotKeys[slot], key))
+                return;
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+        slotHashes[slot] = hash;
+        slotKeys[slot] = key;
+    }
+}
@@ -0,0 +1,294 @@
+package services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Locations used by many different cards in a short time, across all cards.
+ * <p>
+ * The window is cut into slices, each with a count-min sketch of cards per
+ * location and a Bloom filter of the (location, card) pairs it has seen. A
+ * pair is counted once, in the newest slice that has seen it: when a card comes
+ * back in a later slice, its count moves from the previous slice to the
+ * current one, so it stays in the estimate for as long as it keeps coming back
+ * and leaves it a full window after its last visit. Counts decay by whole
+ * slices: a slice is cleared when the clock reaches it again. A Space-Saving
+ * style table keeps the {@code topK} locations with the highest estimates, and
+ * remembers which ones were already reported during the window.
+ * <p>
+ * Memory is fixed whatever the number of locations or cards. Locations are
+ * only looked up, never added: operations are recorded after they were stored,
+ * so their location is already known. Every update is made of atomic
+ * operations without locks. Races and filter false positives only cost
+ * accuracy: two threads counting the same new pair may both count it,
+ * increments made while a slice is being cleared may be lost, and a false
+ * positive may move a count that was never made.
+ */
+public class HotLocationDetector {
+    public static final long DEFAULT_WINDOW_MINUTES = 60;
+    public static final int DEFAULT_DISTINCT_CARDS = 50;
+    public static final int DEFAULT_TOP_K = 32;
+
+    private static final int SLICES = 6;
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1 << 14;
+    private static final int FILTER_BITS = 1 << 20;
+    private static final int FILTER_HASHES = 3;
+    private static final long NEVER = Long.MIN_VALUE / 2;
+
+    private final LocationDictionary locations;
+    private final Duration window;
+    private final long sliceMillis;
+    private final int distinctCards;
+    private final Slice[] slices = new Slice[SLICES];
+    private final AtomicReferenceArray<Candidate> top;
+
+    /**
+     * @param locations     ids of the location names
+     * @param window        time over which distinct cards are counted
+     * @param distinctCards cards within the window that make a location hot
+     * @param topK          locations tracked as candidates
+     */
+    public HotLocationDetector(LocationDictionary locations, Duration window, int distinctCards, int topK) {
+        if (window.toMillis() < SLICES)
+            throw new IllegalArgumentException("Hot location window is too short");
+        if (topK <= 0)
+            throw new IllegalArgumentException("Hot location top K must be greater than zero");
+
+        this.locations = locations;
+        this.window = window;
+        this.sliceMillis = window.toMillis() / SLICES;
+        this.distinctCards = distinctCards;
+        this.top = new AtomicReferenceArray<>(topK);
+        for (int i = 0; i < SLICES; i++) {
+            slices[i] = new Slice();
+        }
+    }
+
+    /**
+     * Count a card at a location
+     *
+     * @param cardId   ID of the card
+     * @param location where the operation was made
+     * @param at       when it was made
+     * @return the location, the first time in the window it turns hot
+     */
+    public Optional<HotLocation> record(int cardId, String location, LocalDateTime at) {
+        int locationId = locations.knownId(location);
+        if (locationId == LocationDictionary.UNKNOWN)
+            return Optional.empty();
+
+        long sliceNumber = at.toInstant(ZoneOffset.UTC).toEpochMilli() / sliceMillis;
+        Slice current = sliceFor(sliceNumber);
+        // Older than the window, nothing left to count it in
+        if (current == null)
+            return Optional.empty();
+
+        long pair = mix(((long) locationId << 32) | (cardId & 0xffffffffL));
+        // Already counted in this slice
+        if (!current.markSeen(pair))
+            return Optional.empty();
+
+        Slice previous = newestSeenBefore(pair, current, sliceNumber);
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * WIDTH + column(locationId, row);
+            current.counts.incrementAndGet(index);
+            if (previous != null)
+                previous.counts.decrementAndGet(index);
+        }
+        // A card coming back changes nothing to the estimate
+        if (previous != null)
+            return Optional.empty();
+        return offer(locationId, estimate(locationId, sliceNumber), sliceNumber);
+    }
+
+    /**
+     * Estimated distinct cards seen at a location during the window ending at
+     * a point in time
+     */
+    public int estimate(String location, LocalDateTime at) {
+        int locationId = locations.knownId(location);
+        if (locationId == LocationDictionary.UNKNOWN)
+            return 0;
+        return estimate(locationId, at.toInstant(ZoneOffset.UTC).toEpochMilli() / sliceMillis);
+    }
+
+    /**
+     * @return the tracked locations, most distinct cards first
+     */
+    public List<HotLocation> hottest() {
+        List<HotLocation> result = new ArrayList<>();
+        for (int i = 0; i < top.length(); i++) {
+            Candidate candidate = top.get(i);
+            if (candidate != null)
+                result.add(new HotLocation(candidate.locationId, locations.nameOf(candidate.locationId),
+                        candidate.count));
+        }
+        result.sort(Comparator.comparingInt(HotLocation::distinctCards).reversed());
+        return result;
+    }
+
+    public Duration window() {
+        return window;
+    }
+
+    private Slice sliceFor(long sliceNumber) {
+        Slice slice = slices[(int) Math.floorMod(sliceNumber, (long) SLICES)];
+        long number = slice.number.get();
+        if (number < sliceNumber && slice.number.compareAndSet(number, sliceNumber))
+            slice.clear();
+        return slice.number.get() == sliceNumber ? slice : null;
+    }
+
+    // The slice the pair is counted in, if it was seen earlier in the window
+    private Slice newestSeenBefore(long pair, Slice current, long sliceNumber) {
+        Slice newest = null;
+        for (Slice slice : slices) {
+            if (slice != current && inWindow(slice, sliceNumber) && slice.isSeen(pair)
+                    && (newest == null || slice.number.get() > newest.number.get()))
+                newest = slice;
+        }
+        return newest;
+    }
+
+    // Count-min estimate: the smallest row total over the slices of the window
+    private int estimate(int locationId, long sliceNumber) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * WIDTH + column(locationId, row);
+            int total = 0;
+            for (Slice slice : slices) {
+                if (inWindow(slice, sliceNumber))
+                    total += slice.counts.get(index);
+            }
+            estimate = Math.min(estimate, total);
+        }
+        // Counts moved on a filter false positive can leave a row short
+        return Math.max(0, estimate);
+    }
+
+    private boolean inWindow(Slice slice, long sliceNumber) {
+        long number = slice.number.get();
+        return number <= sliceNumber && number > sliceNumber - SLICES;
+    }
+
+    /**
+     * Update the location in the top table, replacing the smallest entry if it
+     * is not there yet, and claim its report if it just crossed the threshold
+     */
+    private Optional<HotLocation> offer(int locationId, int count, long sliceNumber) {
+        int smallest = -1;
+        int smallestCount = Integer.MAX_VALUE;
+        for (int i = 0; i < top.length(); i++) {
+            Candidate candidate = top.get(i);
+            if (candidate != null && candidate.locationId == locationId)
+                return update(i, candidate, count, sliceNumber);
+
+            // Entries not updated during the window are worth nothing
+            int value = candidate == null || candidate.sliceNumber <= sliceNumber - SLICES ? 0 : candidate.count;
+            if (value < smallestCount) {
+                smallest = i;
+                smallestCount = value;
+            }
+        }
+
+        if (count <= smallestCount)
+            return Optional.empty();
+        Candidate replaced = top.get(smallest);
+        // Losing the slot to another thread only delays this location to its next card
+        if (replaced != null && replaced.locationId == locationId)
+            return Optional.empty();
+        Candidate entry = new Candidate(locationId, count, sliceNumber, NEVER);
+        if (!top.compareAndSet(smallest, replaced, entry))
+            return Optional.empty();
+        return update(smallest, entry, count, sliceNumber);
+    }
+
+    private Optional<HotLocation> update(int slot, Candidate candidate, int count, long sliceNumber) {
+        while (true) {
+            boolean report = count >= distinctCards && candidate.reportedSlice <= sliceNumber - SLICES;
+            Candidate updated = new Candidate(candidate.locationId, count, sliceNumber,
+                    report ? sliceNumber : candidate.reportedSlice);
+            if (top.compareAndSet(slot, candidate, updated))
+                return report ? Optional.of(new HotLocation(candidate.locationId,
+                        locations.nameOf(candidate.locationId), count)) : Optional.empty();
+
+            candidate = top.get(slot);
+            // Evicted meanwhile: counted in the sketch, the next card puts it back
+            if (candidate == null || candidate.locationId != updated.locationId)
+                return Optional.empty();
+        }
+    }
+
+    private static int column(int locationId, int row) {
+        return (int) (mix(locationId * 0x9e3779b97f4a7c15L + row) >>> 32) & (WIDTH - 1);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * A location and its estimated number of distinct cards in the window
+     */
+    public record HotLocation(int locationId, String location, int distinctCards) {
+    }
+
+    private record Candidate(int locationId, int count, long sliceNumber, long reportedSlice) {
+    }
+
+    private static final class Slice {
+        private final AtomicLong number = new AtomicLong(NEVER);
+        private final AtomicIntegerArray counts = new AtomicIntegerArray(DEPTH * WIDTH);
+        private final AtomicLongArray filter = new AtomicLongArray(FILTER_BITS / 64);
+
+        boolean isSeen(long pair) {
+            for (int i = 0; i < FILTER_HASHES; i++) {
+                int bit = bit(pair, i);
+                if ((filter.get(bit >>> 6) & (1L << bit)) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return true if the pair was not in the filter yet
+         */
+        boolean markSeen(long pair) {
+            boolean added = false;
+            for (int i = 0; i < FILTER_HASHES; i++) {
+                int bit = bit(pair, i);
+                long mask = 1L << bit;
+                if ((filter.getAndAccumulate(bit >>> 6, mask, (word, m) -> word | m) & mask) == 0)
+                    added = true;
+            }
+            return added;
+        }
+
+        void clear() {
+            for (int i = 0; i < counts.length(); i++) {
+                counts.set(i, 0);
+            }
+            for (int i = 0; i < filter.length(); i++) {
+                filter.set(i, 0);
+            }
+        }
+
+        // Double hashing over the two halves of the pair hash
+        private static int bit(long pair, int i) {
+            return (int) ((pair >>> 32) + i * (pair | 1)) & (FILTER_BITS - 1);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package services;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import entities.Location;
+import repositories.LocationRepositoryContract;
+import utils.LocationNames;
+
+/**
+ * Every distinct operation location, numbered.
+ * <p>
+ * Spellings that normalize the same (see {@link LocationNames}) share one id,
+ * stored in the locations table so ids survive a restart. The in-memory fraud
+ * state keeps the id instead of a string per operation, and compares
+ * locations as ints.
+ * <p>
+ * Spellings already seen resolve with a single hash lookup; a new spelling is
+ * normalized once, and a new location added to the repository under a lock.
+ * Only {@link #idOf(String)} adds locations, once their operation is
+ * committed; authorizations use the lookup-only {@link #knownId(String)}.
+ */
+public class LocationDictionary {
+    public static final int UNKNOWN = -1;
+
+    // Past this many spellings new ones are normalized on every lookup instead of remembered
+    private static final int MAX_SPELLINGS = 100_000;
+
+    private final LocationRepositoryContract locationRepository;
+
+    // Exact spelling -> id
+    private final Map<String, Integer> bySpelling = new ConcurrentHashMap<>();
+    // Normalized name -> id
+    private final Map<String, Integer> byNormalizedName = new ConcurrentHashMap<>();
+    // Id -> name the location was first seen with, replaced on growth
+    private volatile String[] names = new String[64];
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Load every known location
+     */
+    public LocationDictionary(LocationRepositoryContract locationRepository) {
+        this.locationRepository = locationRepository;
+        for (Location location : locationRepository.findAll()) {
+            register(location);
+        }
+    }
+
+    /**
+     * Id of a location, added to the dictionary if it is new
+     *
+     * @param location name as typed, in any case or spacing
+     * @return the id, {@link #UNKNOWN} for a null location
+     */
+    public int idOf(String location) {
+        if (location == null)
+            return UNKNOWN;
+
+        Integer id = bySpelling.get(location);
+        return id != null ? id : resolve(location);
+    }
+
+    /**
+     * @return the name a location was first seen with, null for an unknown id
+     */
+    public String nameOf(int id) {
+        String[] current = names;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    /**
+     * Id of a location already in the dictionary, without adding it: no lock
+     * and no repository write, whatever the spelling
+     *
+     * @return the id, {@link #UNKNOWN} if no spelling of the location is known
+     */
+    public int knownId(String location) {
+        if (location == null)
+            return UNKNOWN;
+
+        Integer id = bySpelling.get(location);
+        if (id == null)
+            id = byNormalizedName.get(LocationNames.normalize(location));
+        return id == null ? UNKNOWN : id;
+    }
+
+    public int size() {
+        return byNormalizedName.size();
+    }
+
+    private int resolve(String location) {
+        String normalizedName = LocationNames.normalize(location);
+        Integer id = byNormalizedName.get(normalizedName);
+        if (id == null) {
+            lock.lock();
+            try {
+                id = byNormalizedName.get(normalizedName);
+                if (id == null) {
+                    Location created = locationRepository.findOrCreate(location.trim(), normalizedName);
+                    register(created);
+                    id = created.id();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        if (bySpelling.size() < MAX_SPELLINGS)
+            bySpelling.put(location, id);
+        return id;
+    }
+
+    private void register(Location location) {
+        lock.lock();
+        try {
+            String[] current = names;
+            if (location.id() >= current.length)
+                current = Arrays.copyOf(current, Math.max(location.id() + 1, current.length * 2));
+            current[location.id()] = location.name();
+            names = current;
+
+            byNormalizedName.put(location.normalizedName(), location.id());
+            bySpelling.put(location.name(), location.id());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import entities.CardOperation;
+import repositories.CardOperationRepositoryContract;
+
+/**
+ * Recent operations of each card, kept in memory for the time-based fraud
+ * rules.
+ * <p>
+ * Every card gets a bounded ring buffer of its latest operations in date
+ * order, locations held as {@link LocationDictionary} ids. A card's window is
+ * seeded from the repository the first time it is needed, then kept current
+ * by {@link #record(CardOperation)} for every approved operation, so the rules
+ * never go back to the database. Windows of cards that have not been used for
+ * a while are dropped and seeded again on their next use.
+ */
+public class OperationWindowStore {
+    public static final int DEFAULT_CAPACITY = 32;
+    public static final long DEFAULT_IDLE_MINUTES = 30;
+
+    private final CardOperationRepositoryContract cardOperationRepository;
+    private final LocationDictionary locations;
+    private final Duration horizon;
+    private final int capacity;
+    private final long idleNanos;
+
+    private final Map<Integer, CardWindow> windows = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param cardOperationRepository where windows are seeded from
+     * @param locations               ids the windows keep instead of location
+     *                                names
+     * @param horizon                 how far back the rules look; older
+     *                                operations are never seeded
+     * @param capacity                operations kept per card
+     * @param idleTimeout             how long an unused window is kept
+     */
+    public OperationWindowStore(CardOperationRepositoryContract cardOperationRepository,
+            LocationDictionary locations, Duration horizon, int capacity, Duration idleTimeout) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Window capacity must be greater than zero");
+
+        this.cardOperationRepository = cardOperationRepository;
+        this.locations = locations;
+        this.horizon = horizon;
+        this.capacity = capacity;
+        this.idleNanos = idleTimeout.toNanos();
+    }
+
+    /**
+     * Operations of a card at or after a point in time, oldest first
+     *
+     * @param cardId ID of the card
+     * @param from   inclusive lower bound, within the store's horizon
+     * @return the card's recent operations
+     */
+    public List<WindowEntry> since(int cardId, LocalDateTime from) {
+        return windowOf(cardId).since(from);
+    }
+
+    /**
+     * Add an approved operation to its card's window. Operations already in
+     * the window (seeded after their commit) are ignored.
+     */
+    public void record(CardOperation operation) {
+        windowOf(operation.cardId()).add(entryOf(operation));
+    }
+
+    /**
+     * Drop a card's window, e.g. after its operations changed outside of
+     * {@link #record(CardOperation)}
+     */
+    public void invalidate(int cardId) {
+        windows.remove(cardId);
+    }
+
+    public int size() {
+        return windows.size();
+    }
+
+    private CardWindow windowOf(int cardId) {
+        long now = System.nanoTime();
+        evictIdle(now);
+
+        CardWindow window = windows.computeIfAbsent(cardId, id -> new CardWindow(capacity));
+        window.lastAccess = now;
+        window.seed(this::entryOf, () -> cardOperationRepository.findCardOperationsOfSince(String.valueOf(cardId),
+                LocalDateTime.now().minus(horizon)));
+        return window;
+    }
+
+    // At most one sweep per half idle timeout, run by whichever caller gets there first
+    private void evictIdle(long now) {
+        long last = lastSweep.get();
+        if (now - last < idleNanos / 2 || !lastSweep.compareAndSet(last, now))
+            return;
+
+        windows.values().removeIf(window -> now - window.lastAccess > idleNanos);
+    }
+
+    // Lookup only: locations are added to the dictionary once their operation is committed
+    private WindowEntry entryOf(CardOperation operation) {
+        return new WindowEntry(operation.id(), operation.date(), operation.amount(),
+                locations.knownId(operation.location()));
+    }
+
+    /**
+     * One operation in a card's window
+     *
+     * @param locationId the location's {@link LocationDictionary} id,
+     *                   {@link LocationDictionary#UNKNOWN} if it is not in
+     *                   the dictionary
+     */
+    public record WindowEntry(UUID id, LocalDateTime date, double amount, int locationId) {
+    }
+
+    /**
+     * Fixed-size ring buffer of one card's latest operations, oldest first.
+     * Guarded by a lock rather than synchronized, so a virtual thread seeding
+     * it from the database does not pin its carrier.
+     */
+    private static final class CardWindow {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final WindowEntry[] entries;
+        private int start = 0;
+        private int size = 0;
+        private boolean seeded = false;
+        volatile long lastAccess;
+
+        CardWindow(int capacity) {
+            this.entries = new WindowEntry[capacity];
+        }
+
+        void seed(Function<CardOperation, WindowEntry> toEntry, Supplier<List<CardOperation>> loader) {
+            lock.lock();
+            try {
+                if (seeded)
+                    return;
+                for (CardOperation op : loader.get()) {
+                    insert(toEntry.apply(op));
+                }
+                seeded = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<WindowEntry> since(LocalDateTime from) {
+            lock.lock();
+            try {
+                List<WindowEntry> result = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    WindowEntry entry = at(i);
+                    if (!entry.date().isBefore(from))
+                        result.add(entry);
+                }
+                return result;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void add(WindowEntry entry) {
+            lock.lock();
+            try {
+                insert(entry);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Keep date order; operations almost always arrive last, so the shift is rare
+        private void insert(WindowEntry entry) {
+            int position = size;
+            for (int i = size - 1; i >= 0; i--) {
+                WindowEntry current = at(i);
+                if (current.id().equals(entry.id()))
+                    return;
+                if (current.date().isBefore(entry.date()))
+                    break;
+                if (current.date().isAfter(entry.date()))
+                    position = i;
+            }
+
+            if (size == entries.length) {
+                // Full: the oldest entry makes room, unless the new one is older still
+                if (position == 0)
+                    return;
+                start = (start + 1) % entries.length;
+                size--;
+                position--;
+            }
+
+            for (int i = size; i > position; i--) {
+                entries[(start + i) % entries.length] = at(i - 1);
+            }
+            entries[(start + position) % entries.length] = entry;
+            size++;
+        }
+
+        private WindowEntry at(int i) {
+            return entries[(start + i) % entries.length];
+        }
+    }
+}
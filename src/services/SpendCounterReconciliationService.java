@@ -0,0 +1,37 @@
+package services;
+
+import java.util.List;
+
+import repositories.SpendCounterRepositoryContract;
+import repositories.SpendCounterRepositoryContract.Drift;
+import utils.Console;
+
+public class SpendCounterReconciliationService {
+    private final SpendCounterRepositoryContract spendCounterRepository;
+
+    public SpendCounterReconciliationService(SpendCounterRepositoryContract spendCounterRepository) {
+        this.spendCounterRepository = spendCounterRepository;
+    }
+
+    /**
+     * Rebuild the spend counters from the card operations and report any drift
+     *
+     * @return the buckets that had drifted, already corrected
+     */
+    public List<Drift> reconcile() {
+        List<Drift> drifts = spendCounterRepository.reconcile();
+
+        if (drifts.isEmpty()) {
+            Console.info("Spend counters are in sync with card operations.");
+            return drifts;
+        }
+
+        Console.warn("Spend counters drifted on " + drifts.size() + " bucket(s), rebuilt from card operations:");
+        for (Drift drift : drifts) {
+            Console.warn("Card " + drift.cardId() + " " + drift.period() + " " + drift.periodStart()
+                    + ": expected " + drift.expectedAmount() + " (" + drift.expectedCount() + " ops), found "
+                    + drift.actualAmount() + " (" + drift.actualCount() + " ops)");
+        }
+        return drifts;
+    }
+}
@@ -0,0 +1,158 @@
+package services;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of prepared statements for one physical connection.
+ * <p>
+ * Statements are keyed by their SQL text and generated-keys flag. Closing a
+ * cached statement only clears its parameters so the next caller with the
+ * same SQL reuses it; the real statement is closed when it is evicted or when
+ * the connection leaves the pool. A connection is only ever used by one
+ * thread at a time, so no locking is needed.
+ */
+class StatementCache {
+    private final int capacity;
+    private final LinkedHashMap<Key, Entry> entries;
+
+    StatementCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= StatementCache.this.capacity)
+                    return false;
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Return a cached statement for this SQL, preparing it on a miss. When the
+     * cached statement is already in use (nested query with the same SQL) a
+     * plain, uncached statement is returned instead.
+     */
+    PreparedStatement prepare(Connection physical, String sql, int autoGeneratedKeys) throws SQLException {
+        if (capacity <= 0)
+            return physical.prepareStatement(sql, autoGeneratedKeys);
+
+        Key key = new Key(sql, autoGeneratedKeys);
+        Entry entry = entries.get(key);
+
+        if (entry != null && entry.inUse)
+            return physical.prepareStatement(sql, autoGeneratedKeys);
+
+        if (entry == null) {
+            entry = new Entry(physical.prepareStatement(sql, autoGeneratedKeys));
+            entries.put(key, entry);
+        }
+
+        entry.inUse = true;
+        return entry.lease();
+    }
+
+    void closeAll() {
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            entry.evict();
+        }
+        entries.clear();
+    }
+
+    private record Key(String sql, int autoGeneratedKeys) {
+    }
+
+    private static class Entry {
+        private final PreparedStatement statement;
+        private boolean inUse = false;
+        private boolean evicted = false;
+
+        Entry(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement lease() {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    new LeaseHandler(this));
+        }
+
+        // Close now if idle, otherwise once the current user is done with it
+        void evict() {
+            evicted = true;
+            if (!inUse)
+                closeQuietly(statement);
+        }
+
+        void giveBack() {
+            inUse = false;
+            if (evicted) {
+                closeQuietly(statement);
+                return;
+            }
+            try {
+                statement.clearParameters();
+            } catch (SQLException e) {
+                evicted = true;
+                closeQuietly(statement);
+            }
+        }
+
+        private static void closeQuietly(Statement statement) {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+                // statement is unusable either way
+            }
+        }
+    }
+
+    private static class LeaseHandler implements InvocationHandler {
+        private final Entry entry;
+        private boolean returned = false;
+
+        LeaseHandler(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        entry.giveBack();
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || entry.statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+
+            if (returned)
+                throw new SQLException("Statement has already been closed");
+
+            try {
+                return method.invoke(entry.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
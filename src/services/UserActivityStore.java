@@ -0,0 +1,329 @@
+package services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import entities.CardOperation;
+import repositories.CardOperationRepositoryContract;
+import repositories.OperationQuery;
+
+/**
+ * Recent activity of each user across all of their cards, for the fraud rules
+ * that look past a single card.
+ * <p>
+ * For every configured window a user keeps the running count, amount and
+ * per-location counts of its operations, adjusted as operations enter and
+ * leave the window, so reading the totals costs the same however active the
+ * user is. A user's activity is seeded from the repository the first time it
+ * is needed, then kept current by {@link #record(int, CardOperation)} for
+ * every approved operation. Users are spread over a fixed set of locks, so
+ * operations of different users rarely wait for each other; seeding reads the
+ * repository without holding one. Users with nothing left in their longest
+ * window are dropped.
+ */
+public class UserActivityStore {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final int STRIPES = 64;
+
+    private final CardOperationRepositoryContract cardOperationRepository;
+    private final LocationDictionary locations;
+    private final long[] windowMillis;
+    private final int capacity;
+
+    private final Map<Integer, UserActivity> users = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param cardOperationRepository where activity is seeded from
+     * @param locations               ids of the location names
+     * @param windows                 windows the totals are kept for
+     * @param capacity                operations kept per user; past it the
+     *                                oldest leave every window early
+     */
+    public UserActivityStore(CardOperationRepositoryContract cardOperationRepository, LocationDictionary locations,
+            List<Duration> windows, int capacity) {
+        if (windows.isEmpty())
+            throw new IllegalArgumentException("At least one activity window is required");
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Activity capacity must be greater than zero");
+
+        this.cardOperationRepository = cardOperationRepository;
+        this.locations = locations;
+        this.windowMillis = windows.stream().mapToLong(Duration::toMillis).distinct().sorted().toArray();
+        this.capacity = capacity;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Totals of a user over a window, as they would be with one more operation
+     *
+     * @param userId    owner of the cards
+     * @param window    one of the configured windows
+     * @param candidate operation being authorized, counted in the totals
+     * @return count, amount and distinct locations of the window
+     */
+    public Totals totalsWith(int userId, Duration window, CardOperation candidate) {
+        int index = indexOf(window);
+        long now = millisOf(candidate.date());
+        int locationId = locations.knownId(candidate.location());
+
+        UserActivity activity = activityOf(userId);
+        ReentrantLock lock = lockOf(userId);
+        lock.lock();
+        try {
+            activity.advance(now);
+            Map<Integer, Integer> locationCounts = activity.locationCounts.get(index);
+            // Not in the dictionary yet: no committed operation was made there
+            boolean newLocation = locationId == LocationDictionary.UNKNOWN || !locationCounts.containsKey(locationId);
+            return new Totals(activity.count(index) + 1, activity.amounts[index] + candidate.amount(),
+                    locationCounts.size() + (newLocation ? 1 : 0));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add an approved operation to its user's activity. Operations already
+     * there (seeded after their commit) are ignored, and so are users whose
+     * activity is not loaded: they will read the operation from the
+     * repository when it is.
+     *
+     * @param userId    owner of the operation's card
+     * @param operation the committed operation
+     */
+    public void record(int userId, CardOperation operation) {
+        int locationId = locations.knownId(operation.location());
+        ReentrantLock lock = lockOf(userId);
+        lock.lock();
+        try {
+            UserActivity activity = users.get(userId);
+            if (activity != null)
+                activity.add(operation.id(), millisOf(operation.date()), operation.amount(), locationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Seed a user's activity now if it is not loaded, on the caller's thread
+     * and unit of work
+     */
+    public void load(int userId) {
+        activityOf(userId);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * A user's activity, seeded if needed. The repository is read without the
+     * user's lock, so the other users sharing it are not held up: an unseeded
+     * entry collects the operations recorded meanwhile, and the seeded one
+     * replaces it under the lock unless another caller got there first.
+     */
+    private UserActivity activityOf(int userId) {
+        evictIdle();
+
+        ReentrantLock lock = lockOf(userId);
+        lock.lock();
+        try {
+            UserActivity activity = users.get(userId);
+            if (activity != null && activity.seeded)
+                return activity;
+            if (activity == null)
+                users.put(userId, new UserActivity(windowMillis.length, capacity));
+        } finally {
+            lock.unlock();
+        }
+
+        long longest = windowMillis[windowMillis.length - 1];
+        List<CardOperation> recent = cardOperationRepository.find(OperationQuery.forUser(userId)
+                .between(LocalDateTime.now().minus(Duration.ofMillis(longest)), null)
+                .limit(capacity));
+        UserActivity seeded = new UserActivity(windowMillis.length, capacity);
+        // Newest first from the repository, oldest first into the windows
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            CardOperation op = recent.get(i);
+            seeded.add(op.id(), millisOf(op.date()), op.amount(), locations.knownId(op.location()));
+        }
+        seeded.seeded = true;
+
+        lock.lock();
+        try {
+            UserActivity current = users.get(userId);
+            if (current != null && current.seeded)
+                return current;
+            // Unseeded entries are never evicted, so this one holds whatever was recorded while loading
+            if (current != null)
+                current.replayInto(seeded);
+            users.put(userId, seeded);
+            return seeded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // At most one sweep per longest window, run by whichever caller gets there first
+    private void evictIdle() {
+        long now = System.nanoTime();
+        long last = lastSweep.get();
+        long longestNanos = windowMillis[windowMillis.length - 1] * 1_000_000;
+        if (now - last < longestNanos || !lastSweep.compareAndSet(last, now))
+            return;
+
+        long cutoff = millisOf(LocalDateTime.now()) - windowMillis[windowMillis.length - 1];
+        for (Integer userId : users.keySet()) {
+            ReentrantLock lock = lockOf(userId);
+            // Users busy right now are not idle, skip them rather than wait
+            if (!lock.tryLock())
+                continue;
+            try {
+                UserActivity activity = users.get(userId);
+                // Entries still being seeded are left to the caller seeding them
+                if (activity != null && activity.seeded && activity.latest() < cutoff)
+                    users.remove(userId);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private int indexOf(Duration window) {
+        int index = Arrays.binarySearch(windowMillis, window.toMillis());
+        if (index < 0)
+            throw new IllegalArgumentException("Activity window not configured: " + window);
+        return index;
+    }
+
+    private ReentrantLock lockOf(int userId) {
+        return stripes[Math.floorMod(userId * 0x9e3779b9, STRIPES)];
+    }
+
+    private static long millisOf(LocalDateTime date) {
+        return date.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * A user's totals over one window
+     */
+    public record Totals(int count, double amount, int distinctLocations) {
+    }
+
+    /**
+     * Ring buffer of a user's latest operations, and for every window the
+     * position of its oldest operation and its running totals
+     */
+    private final class UserActivity {
+        private final UUID[] ids;
+        private final long[] times;
+        private final double[] amountsAt;
+        private final int[] locationsAt;
+        // Sequence number of the next operation; the buffer holds the last `size`
+        private long next = 0;
+        private int size = 0;
+        private boolean seeded = false;
+
+        private final long[] tails;
+        private final double[] amounts;
+        private final List<Map<Integer, Integer>> locationCounts;
+
+        UserActivity(int windows, int capacity) {
+            this.ids = new UUID[capacity];
+            this.times = new long[capacity];
+            this.amountsAt = new double[capacity];
+            this.locationsAt = new int[capacity];
+            this.tails = new long[windows];
+            this.amounts = new double[windows];
+            this.locationCounts = new ArrayList<>(windows);
+            for (int i = 0; i < windows; i++) {
+                locationCounts.add(new HashMap<>());
+            }
+        }
+
+        int count(int window) {
+            return (int) (next - tails[window]);
+        }
+
+        long latest() {
+            return size == 0 ? Long.MIN_VALUE : times[slot(next - 1)];
+        }
+
+        void add(UUID id, long time, double amount, int locationId) {
+            // Already there if seeded after it was committed
+            for (long seq = next - 1; seq >= next - size && times[slot(seq)] >= time; seq--) {
+                if (ids[slot(seq)].equals(id))
+                    return;
+            }
+
+            if (size == ids.length) {
+                long oldest = next - size;
+                for (int w = 0; w < tails.length; w++) {
+                    if (tails[w] == oldest)
+                        leave(w);
+                }
+                size--;
+            }
+
+            int slot = slot(next);
+            ids[slot] = id;
+            times[slot] = time;
+            amountsAt[slot] = amount;
+            locationsAt[slot] = locationId;
+            next++;
+            size++;
+
+            for (int w = 0; w < tails.length; w++) {
+                amounts[w] += amount;
+                if (locationId != LocationDictionary.UNKNOWN)
+                    locationCounts.get(w).merge(locationId, 1, Integer::sum);
+            }
+        }
+
+        // Oldest first, so operations the other one already holds are skipped
+        void replayInto(UserActivity other) {
+            for (long seq = next - size; seq < next; seq++) {
+                int slot = slot(seq);
+                other.add(ids[slot], times[slot], amountsAt[slot], locationsAt[slot]);
+            }
+        }
+
+        // Let out of each window the operations at or before its start
+        void advance(long now) {
+            for (int w = 0; w < tails.length; w++) {
+                long start = now - windowMillis[w];
+                while (tails[w] < next && times[slot(tails[w])] <= start) {
+                    leave(w);
+                }
+            }
+        }
+
+        private void leave(int window) {
+            int slot = slot(tails[window]);
+            amounts[window] -= amountsAt[slot];
+            int locationId = locationsAt[slot];
+            if (locationId != LocationDictionary.UNKNOWN)
+                locationCounts.get(window).computeIfPresent(locationId,
+                        (id, count) -> count == 1 ? null : count - 1);
+            tails[window]++;
+        }
+
+        private int slot(long seq) {
+            return (int) (seq % ids.length);
+        }
+    }
+}
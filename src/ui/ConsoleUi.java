@@ -146,6 +146,7 @@ public class ConsoleUi {
             Console.info("Choose an option:");
             Console.info("  1) New Operation (Purchase/Withdrawal/Payment)");
             Console.info("  2) View Operation History");
+            Console.info("  3) View Statement (all cards)");
             Console.info("  0) Back to Card Menu");
             Console.line();
 
@@ -159,6 +160,9 @@ public class ConsoleUi {
                 case "2":
                     cardOperationController.history(user);
                     break;
+                case "3":
+                    cardOperationController.statement(user);
+                    break;
                 default:
                     Console.error("Invalid option!");
                     break;
@@ -0,0 +1,95 @@
+package utils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Reflection-free conversion between an entity and its columns.
+ * Implementations are generated from {@link GenerateMapper}; those of
+ * entities inserted through their mapper are {@link InsertableMapper}s.
+ */
+public interface EntityMapper<T> {
+    Class<T> type();
+
+    /**
+     * Column of every constructor parameter, in order
+     */
+    List<String> columns();
+
+    /**
+     * Build an entity from the current row
+     *
+     * @param columns 1-based index of each of {@link #columns()} in the row,
+     *                0 when the row does not have it
+     */
+    T read(ResultSet rs, int[] columns) throws SQLException;
+
+    /**
+     * Build an entity from snake_case or camelCase keyed data, missing keys
+     * give the type's default value
+     */
+    T fromData(Map<String, Object> data);
+
+    static UUID readUuid(ResultSet rs, int index) throws SQLException {
+        String value = rs.getString(index);
+        return value == null ? null : UUID.fromString(value);
+    }
+
+    static LocalDateTime readLocalDateTime(ResultSet rs, int index) throws SQLException {
+        Timestamp value = rs.getTimestamp(index);
+        return value == null ? null : value.toLocalDateTime();
+    }
+
+    static LocalDate readLocalDate(ResultSet rs, int index) throws SQLException {
+        java.sql.Date value = rs.getDate(index);
+        return value == null ? null : value.toLocalDate();
+    }
+
+    static Object lookup(Map<String, Object> data, String... keys) {
+        for (String key : keys) {
+            Object value = data.get(key);
+            if (value != null)
+                return value;
+        }
+        return null;
+    }
+
+    static int intOf(Map<String, Object> data, String... keys) {
+        Object value = lookup(data, keys);
+        return value == null ? 0 : (int) Hydrator.castValueToType(value, int.class);
+    }
+
+    static long longOf(Map<String, Object> data, String... keys) {
+        Object value = lookup(data, keys);
+        return value == null ? 0L : (long) Hydrator.castValueToType(value, long.class);
+    }
+
+    static double doubleOf(Map<String, Object> data, String... keys) {
+        Object value = lookup(data, keys);
+        return value == null ? 0.0 : (double) Hydrator.castValueToType(value, double.class);
+    }
+
+    static boolean booleanOf(Map<String, Object> data, String... keys) {
+        Object value = lookup(data, keys);
+        return value != null && (boolean) Hydrator.castValueToType(value, boolean.class);
+    }
+
+    static <V> V valueOf(Map<String, Object> data, Class<V> type, String... keys) {
+        return type.cast(Hydrator.castValueToType(lookup(data, keys), type));
+    }
+
+    /**
+     * UUIDs and enums are stored as their string form
+     */
+    static Object toJdbcValue(Object value) {
+        if (value instanceof UUID || value instanceof Enum<?>)
+            return value.toString();
+        return value;
+    }
+}
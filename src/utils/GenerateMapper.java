@@ -0,0 +1,29 @@
+package utils;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a {@link EntityMapper} named {@code <Entity>Mapper} next to the
+ * entity at compile time.
+ * <p>
+ * Put it on a record to map its canonical constructor, or on the constructor
+ * to use for any other class. Each constructor parameter maps to the
+ * snake_case column of the same name.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target({ ElementType.TYPE, ElementType.CONSTRUCTOR })
+public @interface GenerateMapper {
+    /**
+     * Columns filled in by the database, left out of inserts
+     */
+    String[] generatedKeys() default {};
+
+    /**
+     * False for entities spread over several tables, which are inserted by
+     * hand: their mapper only reads
+     */
+    boolean insertable() default true;
+}
@@ -0,0 +1,23 @@
+package utils;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Mapper that can also write an entity, for the entities stored in a single
+ * table. Generated unless {@link GenerateMapper#insertable()} is false.
+ */
+public interface InsertableMapper<T> extends EntityMapper<T> {
+    /**
+     * Columns written on insert, in the order {@link #bind} sets them
+     */
+    List<String> insertColumns();
+
+    /**
+     * Set the {@link #insertColumns()} of an entity as statement parameters
+     *
+     * @return the next free parameter index
+     */
+    int bind(PreparedStatement stmt, T entity, int index) throws SQLException;
+}
@@ -0,0 +1,100 @@
+package utils;
+
+/**
+ * Normalized form of free-typed location names: case, accents, punctuation
+ * and repeated spaces are ignored, so "F\u00e8s", "FES" and " fes " are the same
+ * place. Comparing and hashing work on the raw text without allocating.
+ */
+public final class LocationNames {
+    // Lower case forms of U+00E0..U+00FF with the accent dropped
+    private static final String FOLDED_LATIN1 = "aaaaaaaceeeeiiiidnooooo\u00f7ouuuuy\u00fey";
+
+    private LocationNames() {
+    }
+
+    /**
+     * @return the normalized name: folded words joined by a single space
+     */
+    public static String normalize(CharSequence name) {
+        StringBuilder normalized = new StringBuilder(name.length());
+        boolean pendingSpace = false;
+        for (int i = skipSeparators(name, 0); i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (isSeparator(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            normalized.append(fold(c));
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Whether two names are the same once normalized
+     */
+    public static boolean sameName(CharSequence a, CharSequence b) {
+        int i = skipSeparators(a, 0);
+        int j = skipSeparators(b, 0);
+        while (i < a.length() && j < b.length()) {
+            boolean endA = isSeparator(a.charAt(i));
+            boolean endB = isSeparator(b.charAt(j));
+            if (endA != endB)
+                return false;
+
+            if (endA) {
+                // Word boundary on both sides: any run of separators is one space
+                i = skipSeparators(a, i);
+                j = skipSeparators(b, j);
+                if ((i == a.length()) != (j == b.length()))
+                    return false;
+                continue;
+            }
+            if (fold(a.charAt(i++)) != fold(b.charAt(j++)))
+                return false;
+        }
+        return skipSeparators(a, i) == a.length() && skipSeparators(b, j) == b.length();
+    }
+
+    /**
+     * Hash of the normalized name, equal for every spelling
+     * {@link #sameName(CharSequence, CharSequence)} accepts
+     */
+    public static int hash(CharSequence name) {
+        int hash = 0x811c9dc5;
+        boolean pendingSpace = false;
+        for (int i = skipSeparators(name, 0); i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (isSeparator(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace) {
+                hash = (hash ^ ' ') * 0x01000193;
+                pendingSpace = false;
+            }
+            hash = (hash ^ fold(c)) * 0x01000193;
+        }
+        // Spread the high bits into the low ones used by hash tables
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int skipSeparators(CharSequence s, int i) {
+        while (i < s.length() && isSeparator(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isSeparator(char c) {
+        return Character.isWhitespace(c) || c == '-' || c == '_' || c == '\'' || c == '.' || c == ',';
+    }
+
+    private static char fold(char c) {
+        char lower = Character.toLowerCase(c);
+        return lower >= '\u00e0' && lower <= '\u00ff' ? FOLDED_LATIN1.charAt(lower - '\u00e0') : lower;
+    }
+}
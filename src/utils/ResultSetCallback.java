@@ -0,0 +1,8 @@
+package utils;
+
+import java.sql.ResultSet;
+
+@FunctionalInterface
+public interface ResultSetCallback<T> {
+    T run(ResultSet rs) throws Exception;
+}
@@ -1,37 +1,103 @@
 package www;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
 import config.ConfigLoader;
+import fraud.AmountAnomalyRule;
+import fraud.EscalationRule;
+import fraud.FraudRuleEngine;
+import fraud.HighAmountRule;
+import fraud.RapidLocationChangeRule;
+import fraud.UserVelocityRule;
+import fraud.VelocityRule;
+import repositories.CachedCardRepository;
 import repositories.CardOperationRepository;
+import repositories.CardOperationRepositoryContract;
 import repositories.CardRepository;
+import repositories.CardRepositoryContract;
 import repositories.FraudAlertRepository;
+import repositories.FraudAlertRepositoryContract;
+import repositories.InMemoryCardOperationRepository;
+import repositories.InMemoryCardRepository;
+import repositories.InMemoryFraudAlertRepository;
+import repositories.InMemoryLocationAlertRepository;
+import repositories.InMemoryLocationRepository;
+import repositories.InMemorySpendCounterRepository;
+import repositories.InMemoryUnitOfWork;
+import repositories.InMemoryUserRepository;
+import repositories.JdbcUnitOfWork;
+import repositories.LocationAlertRepository;
+import repositories.LocationAlertRepositoryContract;
+import repositories.LocationRepository;
+import repositories.SpendCounterRepository;
+import repositories.SpendCounterRepositoryContract;
+import repositories.UnitOfWork;
 import repositories.UserRepository;
+import repositories.UserRepositoryContract;
+import services.AlertCounterStore;
 import services.AuthService;
 import services.CardOperationService;
+import services.CardProfileStore;
 import services.CardService;
 import services.DBConnection;
 import services.FraudDetectionService;
+import services.Gazetteer;
+import services.HotLocationDetector;
+import services.LocationDictionary;
+import services.OperationWindowStore;
+import services.SpendCounterReconciliationService;
+import services.UserActivityStore;
 import ui.ConsoleUi;
+import utils.Console;
 
 public class Main {
+    private static final String MIGRATE_LOCATIONS = "--migrate-locations";
+
     private static DBConnection connection;
     private static AuthService authService;
     private static CardService cardService;
     private static CardOperationService cardOperationService;
-    private static UserRepository userRepository;
-    private static CardRepository cardRepository;
-    private static CardOperationRepository cardOperationRepository;
-    private static FraudAlertRepository fraudAlertRepository;
+    private static UserRepositoryContract userRepository;
+    private static CardRepositoryContract cardRepository;
+    private static CardOperationRepositoryContract cardOperationRepository;
+    private static FraudAlertRepositoryContract fraudAlertRepository;
+    private static LocationAlertRepositoryContract locationAlertRepository;
+    private static SpendCounterRepositoryContract spendCounterRepository;
+    private static UnitOfWork unitOfWork;
+    private static LocationDictionary locationDictionary;
     private static FraudDetectionService fraudDetectionService;
 
     public static void main(String[] args) {
-        // Load configuration
-        configureDatabaseConnection();
+        if ("memory".equalsIgnoreCase(ConfigLoader.get("app.backend", "jdbc"))) {
+            // Everything lives in this process, nothing to connect to
+            inMemoryReposInit();
+        } else {
+            // Load configuration
+            configureDatabaseConnection();
+
+            // Test DB connection
+            databaseTest();
+
+            // Initialize repositories
+            reposInit();
+
+            // One-off upgrade of a database with operations from before normalized_location
+            if (List.of(args).contains(MIGRATE_LOCATIONS)) {
+                migrateLocations();
+                ConsoleUi.exit(0);
+            }
 
-        // Test DB connection
-        databaseTest();
+            // Bring the spend counters back in line with card operations
+            if (Boolean.parseBoolean(ConfigLoader.get("spendCounters.reconcileOnStartup", "true"))) {
+                new SpendCounterReconciliationService(spendCounterRepository).reconcile();
+            }
+        }
 
-        // Initialize repositories and services
-        reposInit();
+        // Initialize services
+        servicesInit();
 
         // Start the application
         ConsoleUi menu = new ConsoleUi(authService, cardService, cardOperationService);
@@ -46,12 +112,20 @@ public class Main {
         String user = ConfigLoader.get("db.user");
         String password = ConfigLoader.get("db.password");
         String dbName = ConfigLoader.get("db.dbName");
-        connection = new DBConnection(url, user, password, dbName);
+        int poolSize = ConfigLoader.getInt("db.pool.maxSize", DBConnection.DEFAULT_MAX_POOL_SIZE);
+        long poolTimeout = ConfigLoader.getLong("db.pool.timeoutMs", DBConnection.DEFAULT_BORROW_TIMEOUT_MS);
+        int statementCacheSize = ConfigLoader.getInt("db.pool.statementCacheSize",
+                DBConnection.DEFAULT_STATEMENT_CACHE_SIZE);
+        int fetchSize = ConfigLoader.getInt("db.fetchSize", DBConnection.DEFAULT_FETCH_SIZE);
+        connection = new DBConnection(url, user, password, dbName, poolSize, poolTimeout, statementCacheSize,
+                fetchSize);
+
+        // Release pooled connections on exit
+        Runtime.getRuntime().addShutdownHook(new Thread(connection::close));
     }
 
     private static void databaseTest() {
-        try {
-            connection.getConnection();
+        try (var conn = connection.getConnection()) {
             System.out.println("Database connection test successful.");
         } catch (Exception e) {
             e.printStackTrace();
@@ -60,15 +134,155 @@ public class Main {
     }
 
     private static void reposInit() {
+        SpendCounterRepository spendCounters = new SpendCounterRepository(connection);
+
         userRepository = new UserRepository(connection);
         cardRepository = new CardRepository(connection);
-        cardOperationRepository = new CardOperationRepository(connection);
+        unitOfWork = new JdbcUnitOfWork(connection);
+
+        // Cards are read several times per authorization, keep the hot ones in memory
+        int cardCacheSize = ConfigLoader.getInt("cache.cards.maxSize", CachedCardRepository.DEFAULT_MAX_SIZE);
+        if (cardCacheSize > 0) {
+            cardRepository = new CachedCardRepository(cardRepository, unitOfWork, cardCacheSize);
+        }
+
+        spendCounterRepository = spendCounters;
+        locationDictionary = new LocationDictionary(new LocationRepository(connection));
+        cardOperationRepository = new CardOperationRepository(connection, spendCounters);
         fraudAlertRepository = new FraudAlertRepository(connection);
+        locationAlertRepository = new LocationAlertRepository(connection);
+    }
+
+    private static void migrateLocations() {
+        SpendCounterRepository spendCounters = new SpendCounterRepository(connection);
+        int migrated = new CardOperationRepository(connection, spendCounters).migrateLocations(locationDictionary);
+        Console.info("Normalized locations of " + migrated + " operations filled in");
+    }
+
+    private static void inMemoryReposInit() {
+        InMemorySpendCounterRepository spendCounters = new InMemorySpendCounterRepository();
+
+        userRepository = new InMemoryUserRepository();
+        cardRepository = new InMemoryCardRepository();
+        unitOfWork = new InMemoryUnitOfWork();
+        spendCounterRepository = spendCounters;
+        locationDictionary = new LocationDictionary(new InMemoryLocationRepository());
+        cardOperationRepository = new InMemoryCardOperationRepository(cardRepository, spendCounters);
+        fraudAlertRepository = new InMemoryFraudAlertRepository();
+        locationAlertRepository = new InMemoryLocationAlertRepository();
+    }
+
+    // The engine orders rules by cost, registration order only breaks ties
+    private static FraudRuleEngine fraudRulesInit(AlertCounterStore alertCounters, CardProfileStore cardProfiles,
+            UserActivityStore userActivity) {
+        FraudRuleEngine.Mode mode = FraudRuleEngine.Mode
+                .valueOf(ConfigLoader.get("fraud.evaluation", "sequential").trim().toUpperCase());
+        Duration deadline = Duration.ofMillis(
+                ConfigLoader.getLong("fraud.evaluation.deadlineMs", FraudRuleEngine.DEFAULT_DEADLINE_MS));
 
+        FraudRuleEngine.OnDeadline onDeadline = FraudRuleEngine.OnDeadline
+                .valueOf(ConfigLoader.get("fraud.evaluation.onDeadline", "approve").trim().toUpperCase());
+
+        return new FraudRuleEngine(mode, deadline, onDeadline)
+                .register(new HighAmountRule(
+                        ConfigLoader.getDouble("fraud.highAmount.debit", HighAmountRule.DEFAULT_DEBIT_THRESHOLD),
+                        ConfigLoader.getDouble("fraud.highAmount.credit", HighAmountRule.DEFAULT_CREDIT_THRESHOLD),
+                        ConfigLoader.getDouble("fraud.highAmount.prepaid", HighAmountRule.DEFAULT_PREPAID_THRESHOLD)))
+                .register(new RapidLocationChangeRule(gazetteerInit(), locationDictionary,
+                        ConfigLoader.getDouble("fraud.rapidLocationChange.maxKmh",
+                                RapidLocationChangeRule.DEFAULT_MAX_SPEED_KMH),
+                        Duration.ofHours(ConfigLoader.getLong("fraud.rapidLocationChange.lookbackHours",
+                                RapidLocationChangeRule.DEFAULT_LOOKBACK_HOURS)),
+                        Duration.ofMinutes(ConfigLoader.getLong("fraud.rapidLocationChange.minutes",
+                                RapidLocationChangeRule.DEFAULT_MINUTES))))
+                .register(new VelocityRule(Duration.ofMinutes(
+                        ConfigLoader.getLong("fraud.velocity.minutes", VelocityRule.DEFAULT_MINUTES)),
+                        ConfigLoader.getInt("fraud.velocity.count", VelocityRule.DEFAULT_COUNT)))
+                .register(new EscalationRule(alertCounters,
+                        ConfigLoader.getInt("fraud.escalation.warnings", EscalationRule.DEFAULT_WARNINGS)))
+                .register(new AmountAnomalyRule(cardProfiles,
+                        ConfigLoader.getDouble("fraud.profile.maxZScore", AmountAnomalyRule.DEFAULT_MAX_Z_SCORE),
+                        ConfigLoader.getInt("fraud.profile.minObservations",
+                                AmountAnomalyRule.DEFAULT_MIN_OBSERVATIONS),
+                        ConfigLoader.getDouble("fraud.profile.rareTypeShare",
+                                AmountAnomalyRule.DEFAULT_RARE_TYPE_SHARE)))
+                .register(new UserVelocityRule(userActivity, userVelocityWindow("short"),
+                        ConfigLoader.getInt("fraud.userVelocity.short.count", UserVelocityRule.DEFAULT_SHORT_COUNT),
+                        ConfigLoader.getDouble("fraud.userVelocity.short.amount",
+                                UserVelocityRule.DEFAULT_SHORT_AMOUNT),
+                        ConfigLoader.getInt("fraud.userVelocity.short.locations",
+                                UserVelocityRule.DEFAULT_SHORT_LOCATIONS)))
+                .register(new UserVelocityRule(userActivity, userVelocityWindow("long"),
+                        ConfigLoader.getInt("fraud.userVelocity.long.count", UserVelocityRule.DEFAULT_LONG_COUNT),
+                        ConfigLoader.getDouble("fraud.userVelocity.long.amount", UserVelocityRule.DEFAULT_LONG_AMOUNT),
+                        ConfigLoader.getInt("fraud.userVelocity.long.locations",
+                                UserVelocityRule.DEFAULT_LONG_LOCATIONS)));
+    }
+
+    private static Duration userVelocityWindow(String name) {
+        return Duration.ofMinutes(ConfigLoader.getLong("fraud.userVelocity." + name + ".minutes",
+                name.equals("short") ? UserVelocityRule.DEFAULT_SHORT_MINUTES : UserVelocityRule.DEFAULT_LONG_MINUTES));
+    }
+
+    // Bundled place list unless a file is configured
+    private static Gazetteer gazetteerInit() {
+        String file = ConfigLoader.get("fraud.gazetteer.file", "").trim();
+        try {
+            return file.isEmpty() ? Gazetteer.fromResource(Gazetteer.DEFAULT_RESOURCE)
+                    : Gazetteer.fromFile(Path.of(file));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load the gazetteer", e);
+        }
+    }
+
+    private static void servicesInit() {
         authService = new AuthService(userRepository);
         cardService = new CardService(cardRepository);
-        fraudDetectionService = new FraudDetectionService(fraudAlertRepository, cardRepository,
-                cardOperationRepository);
-        cardOperationService = new CardOperationService(cardOperationRepository, cardRepository, fraudDetectionService);
+
+        // Recent alerts per card and level, so escalation reads a counter instead of the alert history
+        AlertCounterStore alertCounters = new AlertCounterStore(fraudAlertRepository,
+                Duration.ofHours(
+                        ConfigLoader.getLong("fraud.escalation.hours", AlertCounterStore.DEFAULT_WINDOW_HOURS)),
+                Duration.ofMinutes(ConfigLoader.getLong("fraud.alertCounters.idleMinutes",
+                        AlertCounterStore.DEFAULT_IDLE_MINUTES)));
+
+        // Usual amount and operation types per card, learnt from approved operations
+        CardProfileStore cardProfiles = new CardProfileStore(
+                ConfigLoader.getDouble("fraud.profile.alpha", CardProfileStore.DEFAULT_ALPHA),
+                Duration.ofDays(ConfigLoader.getLong("fraud.profile.idleDays", CardProfileStore.DEFAULT_IDLE_DAYS)));
+        long warmupDays = ConfigLoader.getLong("fraud.profile.warmupDays", CardProfileStore.DEFAULT_WARMUP_DAYS);
+        if (warmupDays > 0) {
+            long replayed = cardProfiles.warmUp(cardOperationRepository, LocalDateTime.now().minusDays(warmupDays));
+            Console.info("Card profiles learnt from " + replayed + " operations");
+        }
+
+        // Recent count, amount and locations per user across their cards, for the user velocity rules
+        UserActivityStore userActivity = new UserActivityStore(cardOperationRepository, locationDictionary,
+                List.of(userVelocityWindow("short"), userVelocityWindow("long")),
+                ConfigLoader.getInt("fraud.userVelocity.capacity", UserActivityStore.DEFAULT_CAPACITY));
+
+        FraudRuleEngine ruleEngine = fraudRulesInit(alertCounters, cardProfiles, userActivity);
+
+        // Recent operations per card, so the time-based fraud rules run without database reads
+        OperationWindowStore operationWindows = new OperationWindowStore(cardOperationRepository, locationDictionary,
+                ruleEngine.lookback(),
+                ConfigLoader.getInt("fraud.window.capacity", OperationWindowStore.DEFAULT_CAPACITY),
+                Duration.ofMinutes(ConfigLoader.getLong("fraud.window.idleMinutes",
+                        OperationWindowStore.DEFAULT_IDLE_MINUTES)));
+
+        // Distinct cards per location across all cards, in fixed memory
+        HotLocationDetector hotLocations = new HotLocationDetector(locationDictionary,
+                Duration.ofMinutes(ConfigLoader.getLong("fraud.hotLocation.windowMinutes",
+                        HotLocationDetector.DEFAULT_WINDOW_MINUTES)),
+                ConfigLoader.getInt("fraud.hotLocation.distinctCards", HotLocationDetector.DEFAULT_DISTINCT_CARDS),
+                ConfigLoader.getInt("fraud.hotLocation.topK", HotLocationDetector.DEFAULT_TOP_K));
+
+        fraudDetectionService = new FraudDetectionService(fraudAlertRepository, cardRepository, operationWindows,
+                alertCounters, ruleEngine, hotLocations, locationAlertRepository, unitOfWork);
+        CardOperationService.LimitSource limitSource = CardOperationService.LimitSource
+                .valueOf(ConfigLoader.get("limits.source", "counters").trim().toUpperCase());
+        cardOperationService = new CardOperationService(cardOperationRepository, cardRepository,
+                spendCounterRepository, fraudDetectionService, unitOfWork, operationWindows, cardProfiles,
+                userActivity, locationDictionary, limitSource);
     }
 }
\ No newline at end of file